@@ -0,0 +1,139 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect;
+
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import processing.core.PFont;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/**
+ * Draws a Vis into an offscreen Java2D image of fixed size, frame by frame
+ * on the calling thread, without a PApplet, window or animation thread, so
+ * it works with java.awt.headless=true.
+ *
+ * The view is transformed as by PCanvas: the origin is at the center of the
+ * image, offset by the pan and scaled by the zoom.  The Vis is not given a
+ * canvas, so graph displays draw all vertices rather than culling to a view.
+ *
+ * Example:
+ * <pre>
+ *   OffscreenRenderer r = new OffscreenRenderer(vis, 1024, 768).setView(0, 0, 0.5f);
+ *   r.writeSequence(new File("frames"), "graph", 100, 10);
+ * </pre>
+ */
+public class OffscreenRenderer {
+
+    public final int width, height;
+    private final Vis vis;
+    private final PGraphicsJava2D g;
+    private final PFont font;
+
+    private float panX = 0, panY = 0, zoom = 1f;
+    private int background = 0xff000000;
+    private int frame = 0;
+
+    public OffscreenRenderer(Vis vis, int width, int height) {
+        this.vis = vis;
+        this.width = width;
+        this.height = height;
+
+        //without a parent applet, PGraphics can not load its default font
+        this.font = new PFont(new Font(Font.SANS_SERIF, Font.PLAIN, 16), true);
+
+        g = new PGraphicsJava2D();
+        g.setPrimary(false);
+        g.setSize(width, height);
+    }
+
+    /** pans and zooms as PCanvas.setZoom(x, y, z) */
+    public OffscreenRenderer setView(float panX, float panY, float zoom) {
+        this.panX = panX;
+        this.panY = panY;
+        this.zoom = zoom;
+        return this;
+    }
+
+    public OffscreenRenderer setBackground(int argb) {
+        this.background = argb;
+        return this;
+    }
+
+    public PGraphics getGraphics() {
+        return g;
+    }
+
+    /** the last frame drawn */
+    public BufferedImage getImage() {
+        return (BufferedImage) g.image;
+    }
+
+    /** number of frames drawn */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * draws one frame
+     * @return whether the Vis is to remain visible, as returned by its draw()
+     */
+    public boolean step() {
+        g.beginDraw();
+        g.textFont(font);
+        g.background(background);
+        g.translate(-panX + 0.5f * width, -panY + 0.5f * height);
+        g.scale(zoom, zoom);
+        boolean remain = vis.draw(g);
+        g.endDraw();
+        frame++;
+        return remain;
+    }
+
+    /** draws frames, for animations and layouts to advance */
+    public void step(int frames) {
+        for (int i = 0; i < frames; i++)
+            step();
+    }
+
+    /** writes the last frame as a PNG image */
+    public void write(File file) throws IOException {
+        if (!ImageIO.write(getImage(), "png", file))
+            throw new IOException("no PNG writer available for " + file);
+    }
+
+    /**
+     * draws frames, writing every n'th of them to the directory as
+     * prefix-00000.png, prefix-00001.png, ...
+     * @return the number of images written
+     */
+    public int writeSequence(File dir, String prefix, int frames, int every) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("unable to create " + dir);
+
+        int written = 0;
+        every = Math.max(1, every);
+        for (int i = 1; i <= frames; i++) {
+            step();
+            if ((i % every) == 0) {
+                write(new File(dir, String.format("%s-%05d.png", prefix, written++)));
+            }
+        }
+        return written;
+    }
+}
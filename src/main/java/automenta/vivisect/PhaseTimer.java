@@ -0,0 +1,119 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durations of the named phases of drawing, in nanoseconds, over the last
+ * window of samples of each phase, for percentiles.  Usage:
+ * <pre>
+ *   long t = timer.start();
+ *   ...
+ *   timer.record("layout", t);
+ * </pre>
+ */
+public class PhaseTimer {
+
+    /** samples kept per phase */
+    public final int window;
+
+    static final class Phase {
+        final long[] samples;
+        int count, next;
+
+        Phase(int window) {
+            samples = new long[window];
+        }
+
+        void add(long ns) {
+            samples[next] = ns;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+        }
+    }
+
+    private final Map<String, Phase> phases = new LinkedHashMap();
+
+    public PhaseTimer() {
+        this(120);
+    }
+
+    public PhaseTimer(int window) {
+        this.window = window;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * adds the time since start as a sample of a phase
+     * @return the current time, to start the next phase from
+     */
+    public synchronized long record(final String phase, final long start) {
+        final long now = System.nanoTime();
+        Phase p = phases.get(phase);
+        if (p == null)
+            phases.put(phase, p = new Phase(window));
+        p.add(now - start);
+        return now;
+    }
+
+    /** names of the phases recorded, in order of their first sample */
+    public synchronized List<String> getPhases() {
+        return new ArrayList(phases.keySet());
+    }
+
+    /**
+     * @param q fraction, in 0..1, ex: 0.5 for the median
+     * @return the q'th quantile of the phase's samples in nanoseconds, or -1 if it has none
+     */
+    public synchronized long percentile(final String phase, final double q) {
+        Phase p = phases.get(phase);
+        if ((p == null) || (p.count == 0))
+            return -1;
+        long[] s = Arrays.copyOf(p.samples, p.count);
+        Arrays.sort(s);
+        int i = (int) Math.round(q * (s.length - 1));
+        return s[Math.max(0, Math.min(s.length - 1, i))];
+    }
+
+    /** name of an object's class, for phases */
+    public static String name(Object o) {
+        Class c = o.getClass();
+        while (c.isAnonymousClass())
+            c = c.getSuperclass();
+        return c.getSimpleName();
+    }
+
+    public synchronized void clear() {
+        phases.clear();
+    }
+
+    /** lines of the median, 95th percentile and maximum of each phase, in milliseconds */
+    public List<String> summary() {
+        List<String> lines = new ArrayList();
+        for (String p : getPhases()) {
+            lines.add(String.format("%-24s %7.2f %7.2f %7.2f", p,
+                    percentile(p, 0.5) / 1e6, percentile(p, 0.95) / 1e6, percentile(p, 1.0) / 1e6));
+        }
+        return lines;
+    }
+}
@@ -25,6 +25,29 @@ public interface Vis {
     /** returns true if it should remain visible, false if it is to be removed */
     boolean draw(PGraphics g);
 
+    /**
+     * returns true if the next frame may differ from the last one drawn;
+     * a canvas drawing on demand stops when this is false
+     */
+    default boolean needsRedraw() {
+        return true;
+    }
+
+    /** durations of the phases of drawing this, or null if not measured */
+    default PhaseTimer getTimer() {
+        return null;
+    }
+
+    /** notifies this of the cursor's position, in world coordinates */
+    default void onMouseMoved(float x, float y) {
+
+    }
+
+    /** notifies this of a click, in world coordinates, with the button as in PApplet.mouseButton */
+    default void onMouseClicked(float x, float y, int button) {
+
+    }
+
     /** notifies this when visibility has changed */
     default void onVisible(boolean showing) {
         
@@ -0,0 +1,255 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.dimensionalize;
+
+import java.util.Arrays;
+
+/**
+ * Quadtree of circles for Barnes-Hut approximation of the repulsion of
+ * FastOrganicLayout.  Each node keeps the count, center of mass and total
+ * and largest radius of the circles in its square; a far enough node
+ * repels as a single circle of their total mass at their center.
+ *
+ * Nodes are kept in parallel arrays, with the 4 children of a node
+ * allocated together, so rebuilding allocates nothing once grown.
+ */
+public class BarnesHutTree {
+
+    /** depth below which coincident points share a leaf */
+    static final int maxDepth = 24;
+
+    //per node
+    private double[] x0 = new double[0], y0 = new double[0], size = new double[0];
+    private double[] sumX = new double[0], sumY = new double[0], sumR = new double[0], maxR = new double[0];
+    private int[] count = new int[0];
+    /** index of the first of the node's 4 children, or -1 for a leaf */
+    private int[] firstChild = new int[0];
+    /** first point of a leaf, or -1 */
+    private int[] point = new int[0];
+    private int nodes;
+
+    /** next point in the same leaf, or -1 */
+    private int[] next = new int[0];
+
+    private double[][] loc;
+    private double[] radius;
+
+    /** size of a traversal stack: 3 siblings are left per level of descent */
+    static final int stackSize = 3 * (maxDepth + 1) + 4;
+
+    private final int[] stack = newStack();
+
+    /** builds the tree over points 0..n-1 */
+    public void build(final double[][] loc, final double[] radius, final int n) {
+        this.loc = loc;
+        this.radius = radius;
+        nodes = 0;
+        if (next.length < n)
+            next = new int[n];
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double x = loc[i][0], y = loc[i][1];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        double s = Math.max(Math.max(maxX - minX, maxY - minY), 1e-6) * 1.0001;
+        newNode(minX, minY, s);
+
+        for (int i = 0; i < n; i++)
+            insert(i);
+    }
+
+    private int newNode(double x, double y, double s) {
+        if (nodes == count.length) {
+            int capacity = Math.max(64, nodes * 2);
+            x0 = Arrays.copyOf(x0, capacity);
+            y0 = Arrays.copyOf(y0, capacity);
+            size = Arrays.copyOf(size, capacity);
+            sumX = Arrays.copyOf(sumX, capacity);
+            sumY = Arrays.copyOf(sumY, capacity);
+            sumR = Arrays.copyOf(sumR, capacity);
+            maxR = Arrays.copyOf(maxR, capacity);
+            count = Arrays.copyOf(count, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            point = Arrays.copyOf(point, capacity);
+        }
+        int k = nodes++;
+        x0[k] = x;
+        y0[k] = y;
+        size[k] = s;
+        sumX[k] = sumY[k] = sumR[k] = maxR[k] = 0;
+        count[k] = 0;
+        firstChild[k] = -1;
+        point[k] = -1;
+        return k;
+    }
+
+    private void add(int node, int p) {
+        count[node]++;
+        sumX[node] += loc[p][0];
+        sumY[node] += loc[p][1];
+        sumR[node] += radius[p];
+        if (radius[p] > maxR[node]) maxR[node] = radius[p];
+    }
+
+    private int quadrant(int node, int p) {
+        double h = size[node] / 2;
+        int q = (loc[p][0] >= x0[node] + h) ? 1 : 0;
+        if (loc[p][1] >= y0[node] + h) q += 2;
+        return firstChild[node] + q;
+    }
+
+    private void insert(final int p) {
+        int node = 0;
+        int depth = 0;
+        next[p] = -1;
+        while (true) {
+            add(node, p);
+
+            if (firstChild[node] != -1) {
+                node = quadrant(node, p);
+                depth++;
+                continue;
+            }
+
+            if (point[node] == -1) {
+                point[node] = p;
+                return;
+            }
+
+            if (depth >= maxDepth) {
+                next[p] = point[node];
+                point[node] = p;
+                return;
+            }
+
+            //split the leaf, moving its point to a child
+            double h = size[node] / 2;
+            double x = x0[node], y = y0[node];
+            int c = newNode(x, y, h);
+            newNode(x + h, y, h);
+            newNode(x, y + h, h);
+            newNode(x + h, y + h, h);
+            firstChild[node] = c;
+
+            int q = point[node];
+            point[node] = -1;
+            int qc = quadrant(node, q);
+            add(qc, q);
+            point[qc] = q;
+
+            node = quadrant(node, p);
+            depth++;
+        }
+    }
+
+    public static int[] newStack() {
+        return new int[stackSize];
+    }
+
+    /**
+     * adds the repulsion of all other points on point i to disp
+     * @param theta opening angle; nodes whose size over distance is below it are approximated
+     */
+    public void repel(final int i, final double theta, final double forceConstantSquared,
+            final double minDistanceLimit, final double maxDistanceLimit, final double[] dispX, final double[] dispY) {
+        repel(i, theta, forceConstantSquared, minDistanceLimit, maxDistanceLimit, dispX, dispY, stack);
+    }
+
+    /**
+     * as repel, with a stack from newStack() for the traversal, so threads
+     * with their own stacks may query the same tree at once
+     */
+    public void repel(final int i, final double theta, final double forceConstantSquared,
+            final double minDistanceLimit, final double maxDistanceLimit, final double[] dispX, final double[] dispY,
+            final int[] stack) {
+
+        final double xi = loc[i][0], yi = loc[i][1], ri = radius[i];
+        double fx = 0, fy = 0;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int m = count[node];
+            if (m == 0) continue;
+
+            //distance from i to the node's square, to skip nodes beyond the cutoff
+            final double s = size[node];
+            final double bx = Math.max(0, Math.max(x0[node] - xi, xi - (x0[node] + s)));
+            final double by = Math.max(0, Math.max(y0[node] - yi, yi - (y0[node] + s)));
+            if (Math.sqrt(bx * bx + by * by) - ri - maxR[node] > maxDistanceLimit)
+                continue;
+
+            if (firstChild[node] == -1) {
+                for (int p = point[node]; p != -1; p = next[p]) {
+                    if (p == i) continue;
+                    double xDelta = xi - loc[p][0];
+                    double yDelta = yi - loc[p][1];
+                    //opposite for the two points, so coincident ones are pushed apart
+                    if (xDelta == 0) xDelta = (i < p) ? jitter(i, p) : -jitter(p, i);
+                    if (yDelta == 0) yDelta = (i < p) ? jitter(p, i) : -jitter(i, p);
+                    double deltaLength = Math.sqrt(xDelta * xDelta + yDelta * yDelta);
+                    double d = deltaLength - ri - radius[p];
+                    if (d > maxDistanceLimit) continue;
+                    if (d < minDistanceLimit) d = minDistanceLimit;
+                    double force = forceConstantSquared / d;
+                    fx += (xDelta / deltaLength) * force;
+                    fy += (yDelta / deltaLength) * force;
+                }
+                continue;
+            }
+
+            final double cx = sumX[node] / m, cy = sumY[node] / m;
+            final double xDelta = xi - cx, yDelta = yi - cy;
+            final double deltaLength = Math.sqrt(xDelta * xDelta + yDelta * yDelta);
+            final boolean inside = (bx == 0) && (by == 0);
+
+            if (!inside && (deltaLength > 0) && (s < theta * deltaLength)) {
+                double d = deltaLength - ri - sumR[node] / m;
+                if (d > maxDistanceLimit) continue;
+                if (d < minDistanceLimit) d = minDistanceLimit;
+                double force = m * forceConstantSquared / d;
+                fx += (xDelta / deltaLength) * force;
+                fy += (yDelta / deltaLength) * force;
+            }
+            else {
+                int c = firstChild[node];
+                stack[top++] = c;
+                stack[top++] = c + 1;
+                stack[top++] = c + 2;
+                stack[top++] = c + 3;
+            }
+        }
+
+        dispX[i] += fx;
+        dispY[i] += fy;
+    }
+
+    /**
+     * small positive offset separating coincident points, the same for the
+     * same arguments; the lower index is passed first for x and second for y,
+     * and the offset negated for the higher index
+     */
+    static double jitter(int a, int b) {
+        int h = a * 0x9E3779B1 + b * 0x85EBCA6B;
+        h ^= h >>> 15;
+        return 0.01 + (h & 0xffff) / 65536.0;
+    }
+}
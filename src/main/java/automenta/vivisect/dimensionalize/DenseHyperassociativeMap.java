@@ -0,0 +1,614 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.dimensionalize;
+
+import static automenta.vivisect.dimensionalize.HyperassociativeMap.*;
+import automenta.vivisect.dimensionalize.HyperassociativeMap.EdgeWeightToDistanceFunction;
+import automenta.vivisect.graph.CSRGraph;
+import automenta.vivisect.graph.SpatialGrid;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.jgrapht.Graph;
+
+/**
+ * HyperassociativeMap computed over arrays: vertices are numbered as in a
+ * CSRGraph, the coordinates of vertex i are coordinates[i*dimensions ..
+ * (i+1)*dimensions), and the neighbours of each vertex and their distances
+ * are kept in compressed rows.  Aligning allocates nothing, so it is much
+ * faster and leaves no garbage.
+ *
+ * It aligns as HyperassociativeMap does on a single thread, with the
+ * Euclidean metric, except that both ends of an edge attract each other.
+ * An instance should be used by one thread at a time; the scratch buffers
+ * are kept per thread.
+ *
+ * @param <N> The node type
+ */
+public class DenseHyperassociativeMap<N, E> {
+
+    /** when distance between nodes exceeds this factor times target distance, repulsion is not applied.  set to positive infinity to completely disable */
+    double maxRepulsionDistance = 12.0;
+
+    /** if, with a finite maxRepulsionDistance, repelling vertices are found through a grid instead of by testing all */
+    boolean repulsionGrid = true;
+    /** vertices below which testing all is faster than the grid */
+    static final int minGridVertices = 64;
+
+    private final int dimensions;
+    private double equilibriumDistance;
+    private double learningRate = DEFAULT_LEARNING_RATE;
+    private double maxMovement = 0;
+    private double totalMovement = 0;
+    private double acceptableMaxDistanceFactor = DEFAULT_ACCEPTABLE_DISTANCE_FACTOR;
+    private EdgeWeightToDistanceFunction edgeWeightToDistance = EdgeWeightToDistanceFunction.OneDivSum;
+
+    private final Random random = new Random();
+
+    /** topology the arrays were built from, and its version then */
+    private CSRGraph<N, E> topology;
+    private int version = -1;
+    private int n;
+    private final Map<N, Integer> index = new HashMap();
+    /** vertex of each index */
+    private Object[] nodes = new Object[0];
+
+    private double[] coordinates = new double[0];
+    /** the coordinates before the last change of topology, reused for the next */
+    private double[] spareCoordinates = new double[0];
+    private double[] radius = new double[0], speed = new double[0];
+
+    /** neighbours of vertex i are neighbor[neighborOffsets[i] .. neighborOffsets[i+1]), without repeats or i itself */
+    private int[] neighborOffsets = new int[1];
+    private int[] neighbor = new int[0];
+    private double[] neighborDistance = new double[0];
+    /** slot in neighbor of each topology adjacency entry, or -1 for self loops */
+    private int[] adjacencySlot = new int[0];
+
+    /** buffers of one aligning thread */
+    private static final class Scratch {
+        double[] delta = new double[0], repel = new double[0];
+        /** vertex j is a neighbour of the vertex being aligned if mark[j] == stamp */
+        int[] mark = new int[0];
+        int stamp;
+        /** slot in neighbor of each vertex of the row being built, and previous index of each vertex */
+        int[] slotOf = new int[0], previous = new int[0];
+
+        /**
+         * candidates for repulsion: every vertex, or those found in the grid
+         * of the first two coordinates, in ascending order either way
+         */
+        int[] all = new int[0];
+        final SpatialGrid grid = new SpatialGrid();
+        float[] gx = new float[0], gy = new float[0];
+        /** if the grid was built for this align, and how far vertices may have moved since */
+        boolean gridBuilt;
+        double gridMargin;
+    }
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    public DenseHyperassociativeMap(final int dimensions, final double equilibriumDistance) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be 1 or more");
+        }
+        this.dimensions = dimensions;
+        this.equilibriumDistance = Math.abs(equilibriumDistance);
+    }
+
+    public DenseHyperassociativeMap(final int dimensions) {
+        this(dimensions, DEFAULT_EQUILIBRIUM_DISTANCE);
+    }
+
+    /** added to equilibrium distance to get target alignment distance */
+    public double getRadius(N n) {
+        return 0;
+    }
+
+    /** speed scaling factor for a node; should be &lt;= 1.0 */
+    public double getSpeedFactor(N n) {
+        return 1.0;
+    }
+
+    /** edge "weight" which can be mapped in certain ways (via EdgeWeightToDistanceFunction) to distance */
+    public double getEdgeWeight(E e) {
+        return 1.0;
+    }
+
+    public void setEdgeWeightToDistance(EdgeWeightToDistanceFunction f) {
+        this.edgeWeightToDistance = f;
+    }
+
+    public double getEquilibriumDistance() {
+        return equilibriumDistance;
+    }
+
+    public void setEquilibriumDistance(final double equilibriumDistance) {
+        this.equilibriumDistance = Math.abs(equilibriumDistance);
+    }
+
+    public void setMaxRepulsionDistance(double factor) {
+        this.maxRepulsionDistance = factor;
+    }
+
+    /** @param grid if repelling vertices within a finite cutoff are found through a grid; true by default */
+    public void setRepulsionGrid(boolean grid) {
+        this.repulsionGrid = grid;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /** number of vertices */
+    public int size() {
+        return n;
+    }
+
+    /** @return index of a vertex in getCoordinates(), or -1 */
+    public int indexOf(N node) {
+        Integer i = index.get(node);
+        return (i != null) ? i : -1;
+    }
+
+    /** coordinates of all vertices, dimensions per vertex; another array after the topology changes */
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+
+    /** lays out the vertices of a graph, through a CSRGraph of its own */
+    public int setGraph(Graph<N, E> graph) {
+        CSRGraph<N, E> t = (topology != null) ? topology : new CSRGraph();
+        return setTopology(t.set(graph));
+    }
+
+    /**
+     * lays out the vertices of a topology, rebuilding the arrays if it has
+     * changed since the last call.  Vertices which were already laid out keep
+     * their coordinates, and new ones are placed at random.
+     * @return number of new vertices
+     */
+    public int setTopology(CSRGraph<N, E> t) {
+        if ((t == topology) && (t.getVersion() == version))
+            return 0;
+
+        final int m = t.vertexCount();
+        final Scratch s = scratch.get();
+        if (s.previous.length < m)
+            s.previous = new int[m];
+        final int[] previous = s.previous;
+
+        //CSRGraph keeps the ids of remaining vertices, so most are found at the same index
+        for (int i = 0; i < m; i++) {
+            Object v = t.vertex(i);
+            if ((i < n) && v.equals(nodes[i])) {
+                previous[i] = i;
+            }
+            else {
+                Integer old = index.get(v);
+                previous[i] = (old != null) ? old : -1;
+            }
+        }
+
+        double[] c = spareCoordinates;
+        if (c.length < m * dimensions)
+            c = new double[m * dimensions];
+        int added = 0;
+        for (int i = 0; i < m; i++) {
+            int old = previous[i];
+            if (old != -1) {
+                System.arraycopy(coordinates, old * dimensions, c, i * dimensions, dimensions);
+            }
+            else {
+                for (int d = 0; d < dimensions; d++)
+                    c[i * dimensions + d] = (random.nextDouble() * 2.0) - 1.0;
+                added++;
+            }
+        }
+
+        //update the index only where the vertex of an index changed
+        for (int i = 0; i < n; i++) {
+            if ((i >= m) || (previous[i] != i))
+                index.remove(nodes[i]);
+        }
+        if (nodes.length < m)
+            nodes = Arrays.copyOf(nodes, m);
+        for (int i = 0; i < m; i++) {
+            if (previous[i] != i) {
+                N v = t.vertex(i);
+                nodes[i] = v;
+                index.put(v, i);
+            }
+        }
+        Arrays.fill(nodes, m, nodes.length, null);
+
+        spareCoordinates = coordinates;
+        coordinates = c;
+        topology = t;
+        version = t.getVersion();
+        n = m;
+        if (radius.length < n) {
+            radius = new double[n];
+            speed = new double[n];
+        }
+
+        //neighbour rows without repeats or self loops
+        final int entries = t.offsets[n];
+        if (adjacencySlot.length < entries)
+            adjacencySlot = new int[entries];
+        if (neighbor.length < entries) {
+            neighbor = new int[entries];
+            neighborDistance = new double[entries];
+        }
+        if (neighborOffsets.length < n + 1)
+            neighborOffsets = new int[n + 1];
+        final int[] mark = marks(s);
+        if (s.slotOf.length < n)
+            s.slotOf = new int[n];
+        final int[] slotOf = s.slotOf;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            neighborOffsets[i] = k;
+            final int stamp = ++s.stamp;
+            for (int p = t.offsets[i]; p < t.offsets[i + 1]; p++) {
+                int j = t.targets[p];
+                if (j == i) {
+                    adjacencySlot[p] = -1;
+                    continue;
+                }
+                if (mark[j] != stamp) {
+                    mark[j] = stamp;
+                    slotOf[j] = k;
+                    neighbor[k++] = j;
+                }
+                adjacencySlot[p] = slotOf[j];
+            }
+        }
+        neighborOffsets[n] = k;
+
+        return added;
+    }
+
+    /** mark array of at least n entries, cleared when replaced */
+    private int[] marks(Scratch s) {
+        if (s.mark.length < n) {
+            s.mark = new int[n];
+            s.stamp = 0;
+        }
+        else if (s.stamp > Integer.MAX_VALUE - n - 1) {
+            Arrays.fill(s.mark, 0);
+            s.stamp = 0;
+        }
+        return s.mark;
+    }
+
+    public void resetLearning() {
+        learningRate = DEFAULT_LEARNING_RATE;
+        maxMovement = 0;
+        totalMovement = 0;
+        acceptableMaxDistanceFactor = DEFAULT_ACCEPTABLE_DISTANCE_FACTOR;
+    }
+
+    /** places all vertices at random */
+    public void reset() {
+        resetLearning();
+        for (int k = 0; k < n * dimensions; k++)
+            coordinates[k] = (random.nextDouble() * 2.0) - 1.0;
+    }
+
+    public void run(int i) {
+        for ( ; i > 0; i--)
+            align();
+    }
+
+    /** the distances to the neighbours of each vertex, from the current edge weights */
+    private void updateNeighborDistances() {
+        final CSRGraph<N, E> t = topology;
+        final int k = neighborOffsets[n];
+        Arrays.fill(neighborDistance, 0, k, Double.NaN);
+
+        for (int i = 0; i < n; i++) {
+            for (int p = t.offsets[i]; p < t.offsets[i + 1]; p++) {
+                int slot = adjacencySlot[p];
+                if (slot == -1) continue;
+
+                double currentWeight = getEdgeWeight(t.edge(t.adjacentEdge[p]));
+                double existingWeight = neighborDistance[slot];
+                if (!Double.isNaN(existingWeight)) {
+                    switch (edgeWeightToDistance) {
+                        case Min:
+                            currentWeight = Math.min(existingWeight, currentWeight);
+                            break;
+                        case Max:
+                            currentWeight = Math.max(existingWeight, currentWeight);
+                            break;
+                        case SumOneDiv:
+                        case OneDivSumOneDiv:
+                            currentWeight = 1/currentWeight + existingWeight;
+                            break;
+                        case Sum:
+                        case OneDivSum:
+                            currentWeight += existingWeight;
+                            break;
+                    }
+                }
+                neighborDistance[slot] = currentWeight;
+            }
+        }
+
+        switch (edgeWeightToDistance) {
+            case OneDivSumOneDiv:
+            case OneDivSum:
+                for (int slot = 0; slot < k; slot++)
+                    neighborDistance[slot] = 1.0 / neighborDistance[slot];
+                break;
+        }
+    }
+
+    public void align() {
+        if (n == 0) return;
+
+        totalMovement = 0;
+        maxMovement = 0;
+
+        for (int i = 0; i < n; i++) {
+            N node = topology.vertex(i);
+            radius[i] = getRadius(node);
+            speed[i] = getSpeedFactor(node);
+        }
+        updateNeighborDistances();
+
+        final Scratch s = scratch.get();
+        if (s.delta.length < dimensions) {
+            s.delta = new double[dimensions];
+            s.repel = new double[dimensions];
+        }
+        marks(s);
+        if (s.all.length < n) {
+            s.all = new int[n];
+            for (int i = 0; i < n; i++)
+                s.all[i] = i;
+        }
+        buildGrid(s);
+
+        for (int i = 0; i < n; i++)
+            align(i, s);
+
+        if ((learningRate * LEARNING_RATE_PROCESSING_ADJUSTMENT) < DEFAULT_LEARNING_RATE) {
+            final double acceptableDistanceAdjustment = 0.1;
+            if ((totalMovement / n) < (equilibriumDistance * acceptableMaxDistanceFactor * acceptableDistanceAdjustment)) {
+                acceptableMaxDistanceFactor *= LEARNING_RATE_INCREASE_FACTOR;
+            }
+            learningRate *= LEARNING_RATE_PROCESSING_ADJUSTMENT;
+        }
+
+        //move the center of all the points to the origin
+        final double[] c = coordinates;
+        final double[] center = s.delta;
+        Arrays.fill(center, 0, dimensions, 0);
+        for (int i = 0; i < n; i++)
+            for (int d = 0; d < dimensions; d++)
+                center[d] += c[i * dimensions + d];
+        for (int d = 0; d < dimensions; d++)
+            center[d] /= n;
+        for (int i = 0; i < n; i++)
+            for (int d = 0; d < dimensions; d++)
+                c[i * dimensions + d] -= center[d];
+    }
+
+    /**
+     * indexes the vertices by their first two coordinates, if the cutoff is
+     * finite, there are enough of them, and they are spread well beyond the
+     * cutoff.  Since vertices move while they are
+     * aligned, queries are extended by the farthest a vertex may move.
+     */
+    private void buildGrid(final Scratch s) {
+        s.gridBuilt = repulsionGrid && (dimensions >= 2) && (n >= minGridVertices)
+                && !Double.isInfinite(maxRepulsionDistance);
+        if (!s.gridBuilt) return;
+
+        if (s.gx.length < n) {
+            s.gx = new float[n];
+            s.gy = new float[n];
+        }
+        double maxTarget = 0;
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            float x = s.gx[i] = (float) coordinates[i * dimensions];
+            float y = s.gy[i] = (float) coordinates[i * dimensions + 1];
+            if (x < x0) x0 = x;
+            if (x > x1) x1 = x;
+            if (y < y0) y0 = y;
+            if (y > y1) y1 = y;
+            maxTarget = Math.max(maxTarget, radius[i] + equilibriumDistance);
+        }
+        s.gridMargin = maxTarget * acceptableMaxDistanceFactor;
+
+        //not worth it if a query may cover a quarter of the vertices' extent
+        double side = 2 * (maxTarget * maxRepulsionDistance + s.gridMargin);
+        if (side * side * 4 > (double) (x1 - x0) * (y1 - y0)) {
+            s.gridBuilt = false;
+            return;
+        }
+        s.grid.build(s.gx, s.gy, n);
+    }
+
+    private void align(final int i, final Scratch s) {
+        final double nodeSpeed = speed[i];
+        if (nodeSpeed == 0) return;
+
+        final int dim = dimensions;
+        final double[] c = coordinates;
+        final double[] delta = s.delta;
+        final int[] mark = s.mark;
+        final int stamp = ++s.stamp;
+        final int pi = i * dim;
+        Arrays.fill(delta, 0, dim, 0);
+
+        final double targetDistance = radius[i] + equilibriumDistance;
+
+        // align with neighbours
+        for (int k = neighborOffsets[i]; k < neighborOffsets[i + 1]; k++) {
+            final int pj = neighbor[k] * dim;
+            mark[neighbor[k]] = stamp;
+            final double distToNeighbor = neighborDistance[k];
+
+            double d2 = 0;
+            for (int d = 0; d < dim; d++) {
+                double a = c[pj + d] - c[pi + d];
+                d2 += a * a;
+            }
+            final double oldDistance = Math.sqrt(d2);
+
+            double newDistance;
+            if (oldDistance > distToNeighbor) {
+                newDistance = Math.pow(oldDistance - distToNeighbor, ATTRACTION_STRENGTH);
+            } else {
+                newDistance = -targetDistance * atanh((distToNeighbor - oldDistance) / distToNeighbor);
+
+                if (Math.abs(newDistance) > (Math.abs(distToNeighbor - oldDistance))) {
+                    newDistance = -targetDistance * (distToNeighbor - oldDistance);
+                }
+            }
+
+            newDistance *= learningRate;
+            if (oldDistance != 0) {
+                final double factor = newDistance / oldDistance;
+                for (int d = 0; d < dim; d++)
+                    delta[d] += (c[pj + d] - c[pi + d]) * factor;
+            }
+        }
+
+        // calculate repulsion with all non-neighbors
+        repel(i, s, targetDistance);
+
+        if (nodeSpeed != 1.0) {
+            for (int d = 0; d < dim; d++)
+                delta[d] *= nodeSpeed;
+        }
+
+        double moveDistance = 0;
+        for (int d = 0; d < dim; d++)
+            moveDistance += delta[d] * delta[d];
+        moveDistance = Math.sqrt(moveDistance);
+
+        if (moveDistance > targetDistance * acceptableMaxDistanceFactor) {
+            final double newLearningRate = ((targetDistance * acceptableMaxDistanceFactor) / moveDistance);
+            if (newLearningRate < learningRate) {
+                learningRate = newLearningRate;
+            } else {
+                learningRate *= LEARNING_RATE_INCREASE_FACTOR;
+            }
+            moveDistance = 0;
+        }
+        else {
+            for (int d = 0; d < dim; d++)
+                c[pi + d] += delta[d];
+        }
+
+        if (moveDistance > maxMovement) {
+            maxMovement = moveDistance;
+        }
+        totalMovement += moveDistance;
+    }
+
+    /** adds the repulsion of the vertices which are not neighbours of i, and are within the cutoff, to the scratch delta */
+    private void repel(final int i, final Scratch s, final double targetDistance) {
+        final int dim = dimensions;
+        final double[] c = coordinates;
+        final double[] delta = s.delta, repel = s.repel;
+        final int[] mark = s.mark;
+        final int stamp = s.stamp;
+        final int pi = i * dim;
+        final double maxEffectiveDistance = targetDistance * maxRepulsionDistance;
+        final double maxSq = maxEffectiveDistance * maxEffectiveDistance;
+        final double rate = learningRate;
+
+        final int[] candidates;
+        final int count;
+        if (s.gridBuilt) {
+            //extended a little more for the rounding of the grid's coordinates
+            final double r = maxEffectiveDistance + s.gridMargin;
+            final float e = (float) (r * 1e-3);
+            final double xi = c[pi], yi = c[pi + 1];
+            count = s.grid.query((float) (xi - r) - e, (float) (yi - r) - e, (float) (xi + r) + e, (float) (yi + r) + e);
+            candidates = s.grid.getFound();
+        }
+        else {
+            count = n;
+            candidates = s.all;
+        }
+
+        if (dim == 2) {
+            //the same in registers, for the usual planar layout
+            final double xi = c[pi], yi = c[pi + 1];
+            double dx = 0, dy = 0;
+            for (int k = 0; k < count; k++) {
+                final int j = candidates[k];
+                final double ax = c[2 * j] - xi, ay = c[2 * j + 1] - yi;
+                final double d2 = ax * ax + ay * ay;
+                if ((d2 > maxSq) || (d2 == 0) || (j == i) || (mark[j] == stamp)) continue;
+
+                double newDistance = -targetDistance / d2;
+                if (newDistance < -targetDistance) newDistance = -targetDistance;
+                final double factor = newDistance * rate / Math.sqrt(d2);
+                dx += ax * factor;
+                dy += ay * factor;
+            }
+            delta[0] += dx;
+            delta[1] += dy;
+            return;
+        }
+
+        for (int k = 0; k < count; k++) {
+            final int j = candidates[k];
+            if ((j == i) || (mark[j] == stamp)) continue;
+
+            final int pj = j * dim;
+            double d2 = 0;
+            int d = 0;
+            for ( ; d < dim; d++) {
+                double ab = c[pj + d] - c[pi + d];
+                d2 += ab * ab;
+                if (d2 > maxSq) break;
+                repel[d] = ab;
+            }
+            if ((d < dim) || (d2 == 0)) continue;
+
+            final double oldDistance = Math.sqrt(d2);
+            //oldDistance^REPULSIVE_WEAKNESS, which is 2
+            double newDistance = -targetDistance / d2;
+            if (Math.abs(newDistance) > targetDistance) {
+                newDistance = Math.copySign(targetDistance, newDistance);
+            }
+            newDistance *= learningRate;
+
+            final double factor = newDistance / oldDistance;
+            for (d = 0; d < dim; d++)
+                delta[d] += repel[d] * factor;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(coordinates, n * dimensions));
+    }
+}
@@ -15,21 +15,24 @@
 package automenta.vivisect.dimensionalize;
 
 import automenta.vivisect.graph.AbstractGraphVis;
+import automenta.vivisect.graph.CSRGraph;
 import automenta.vivisect.graph.EdgeVis;
 import automenta.vivisect.graph.GraphDisplay;
+import automenta.vivisect.graph.IterativeLayout;
 import automenta.vivisect.graph.VertexVis;
 import com.mxgraph.util.mxRectangle;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import org.jgrapht.Graph;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * Fast organic layout algorithm, adapted from JGraph
  */
-public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
+public class FastOrganicLayout<V, E> implements GraphDisplay<V,E>, IterativeLayout {
 
     /**
      * Specifies if the top left corner of the input cells should be the origin
@@ -77,11 +80,73 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
      */
     protected double maxDistanceLimit = 500;
 
+    /**
+     * Barnes-Hut opening angle: a group of vertex whose extent over its
+     * distance is below it repels as one. 0 is exact; larger is faster and
+     * coarser. Default is 0.8.
+     */
+    protected double theta = 0.8;
+
+    /**
+     * Number of vertex above which repulsion is approximated by a
+     * Barnes-Hut quadtree, O(n log n), instead of summed over all pairs,
+     * O(n^2). Default is 500.
+     */
+    protected int approximateAbove = 500;
+
+    /**
+     * Quadtree over the cell locations, rebuilt each iteration.
+     */
+    protected BarnesHutTree tree;
+
+    /**
+     * Specifies if the forces of more than parallelAbove vertex are computed
+     * on the shared pool. Default is true.
+     */
+    protected boolean parallel = true;
+
+    /**
+     * Number of vertex above which the forces are computed in parallel.
+     * Default is 1000.
+     */
+    protected int parallelAbove = 1000;
+
+    /**
+     * Number of blocks the vertex are divided into when computing in
+     * parallel. It does not depend on the number of threads, so neither does
+     * the order in which displacements are summed, nor the layout.
+     */
+    protected static final int parallelBlocks = 16;
+
+    /**
+     * Number of blocks of this run, or 0 if it is not parallel.
+     */
+    protected int blocks;
+
+    /**
+     * Displacements of each block, summed into dispX and dispY by
+     * calcPositions.
+     */
+    protected double[][] blockDispX, blockDispY;
+
+    /**
+     * Quadtree traversal stack of each block.
+     */
+    protected int[][] blockStack;
+
+    private static ForkJoinPool pool;
+
     /**
      * Start value of temperature. Default is 200.
      */
     protected double initialTemp = 200;
 
+    /**
+     * Factor by which each iterate() reduces the temperature, so a layout
+     * run continuously settles. Default is 0.98.
+     */
+    protected double coolingRate = 0.98;
+
     /**
      * Temperature to limit displacement at later stages of layout.
      */
@@ -102,6 +167,11 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
      */
     protected List<VertexVis> vertexArray;
 
+    /**
+     * Number of vertex laid out.
+     */
+    protected int vertexCount;
+
     /**
      * An array of locally stored X co-ordinate displacements for the vertex.
      */
@@ -133,9 +203,21 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
     protected boolean[] isMoveable;
 
     /**
-     * Local copy of cell neighbours.
+     * Local copy of cell neighbours, as indices into vertexArray: the
+     * neighbours of vertex i are neighborIndex[neighborOffsets[i] ..
+     * neighborOffsets[i+1]).
      */
-    protected int[][] neighbors;
+    protected int[] neighborOffsets;
+
+    protected int[] neighborIndex;
+
+    /**
+     * Largest displacement of a vertex in the last iteration, and of each
+     * block when computing in parallel.
+     */
+    protected double maxDisplacement;
+
+    protected double[] blockMaxDisplacement = new double[parallelBlocks];
 
     /**
      * Boolean flag that specifies if the layout is allowed to run. If this is
@@ -144,9 +226,14 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
     protected boolean allowedToRun = true;
 
     /**
-     * Maps from vertex to indices.
+     * Maps from topology vertex id to index in vertexArray, or -1.
      */
-    protected Map<V, Integer> indices;
+    protected int[] layoutIndex;
+
+    /**
+     * Maps from index in vertexArray to topology vertex id.
+     */
+    protected int[] topologyIndex;
     
     
 
@@ -278,6 +365,81 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
         this.maxDistanceLimit = maxDistanceLimit;
     }
 
+    /**
+     * @return the Barnes-Hut opening angle
+     */
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * @param theta the Barnes-Hut opening angle; 0 makes the approximation exact
+     */
+    public void setTheta(double theta) {
+        this.theta = theta;
+    }
+
+    /**
+     * @return the number of vertex above which repulsion is approximated
+     */
+    public int getApproximateAbove() {
+        return approximateAbove;
+    }
+
+    /**
+     * @param n the number of vertex above which repulsion is approximated;
+     * Integer.MAX_VALUE to always sum all pairs
+     */
+    public void setApproximateAbove(int n) {
+        this.approximateAbove = n;
+    }
+
+    /**
+     *
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param value if the forces of large graphs are computed on the shared pool
+     */
+    public void setParallel(boolean value) {
+        parallel = value;
+    }
+
+    /**
+     * @param n the number of vertex above which forces are computed in parallel
+     */
+    public void setParallelAbove(int n) {
+        parallelAbove = n;
+    }
+
+    /**
+     * Pool of daemon threads, one per processor, shared by the layouts of all
+     * graph windows.
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    t.setName("Layout " + t.getPoolIndex());
+                    t.setDaemon(true);
+                    return t;
+                }
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * @param value factor by which each iterate() reduces the temperature
+     */
+    public void setCoolingRate(double value) {
+        coolingRate = value;
+    }
+
     /**
      *
      */
@@ -301,42 +463,42 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
         temperature = initialTemp * (1.0 - iteration / maxIterations);
     }
 
-    @Override public boolean postUpdate(AbstractGraphVis<V,E> g) {
-        Graph<V,E> graph = g.getGraph();
-
-        if (indices == null)
-            indices = new HashMap<>();
-        else
-            indices.clear();
-        
-        // Finds the relevant vertex for the layout
-        if (vertexArray == null)
-            vertexArray = new ArrayList();
-        else
-            vertexArray.clear();
-        
-        for (V v : graph.vertexSet()) {
-            VertexVis vd = g.getVertexDisplay(v);
-            if (vd == null) continue;
-            if (vd.getRadius() == 0) continue;
-            vertexArray.add(vd);
-        }
-        
-        mxRectangle initialBounds = null;
-
-        int n = vertexArray.size();
-
-        
+    /**
+     * Allocates the arrays for n vertex, reusing those of the same size, and
+     * caches the squared limits.
+     */
+    protected void allocate(int n) {
         if ((cellLocation == null) || (cellLocation.length!=n)) {
             dispX = new double[n];
             dispY = new double[n];
             cellLocation = new double[n][];
             isMoveable = new boolean[n];
-            neighbors = new int[n][];
             radius = new double[n];
             radiusSquared = new double[n];
+            topologyIndex = new int[n];
+            neighborOffsets = new int[n + 1];
         }       
         
+        blocks = (parallel && (n > parallelAbove)) ? parallelBlocks : 0;
+        if (blocks > 0) {
+            if ((blockDispX == null) || (blockDispX[0].length != n)) {
+                blockDispX = new double[blocks][n];
+                blockDispY = new double[blocks][n];
+            }
+            else {
+                // Clear what an interrupted run may have left
+                for (int b = 0; b < blocks; b++) {
+                    Arrays.fill(blockDispX[b], 0);
+                    Arrays.fill(blockDispY[b], 0);
+                }
+            }
+        }
+        if ((blockStack == null) || (blockStack.length < Math.max(1, blocks))) {
+            blockStack = new int[Math.max(1, blocks)][];
+            for (int b = 0; b < blockStack.length; b++)
+                blockStack[b] = BarnesHutTree.newStack();
+        }
+
         minDistanceLimitSquared = minDistanceLimit * minDistanceLimit;
 
         if (forceConstant < 0.001) {
@@ -344,38 +506,60 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
         }
 
         forceConstantSquared = forceConstant * forceConstant;
+    }
+
+    @Override public boolean postUpdate(AbstractGraphVis<V,E> g) {
+        CSRGraph<V,E> topology = g.getTopology();
+        int total = topology.vertexCount();
+
+        // Finds the relevant vertex for the layout
+        if (vertexArray == null)
+            vertexArray = new ArrayList();
+        else
+            vertexArray.clear();
+
+        if ((layoutIndex == null) || (layoutIndex.length < total))
+            layoutIndex = new int[total];
 
-		// Create a map of vertex first. This is required for the array of
-        // arrays called neighbours which holds, for each vertex, a list of
-        // ints which represents the neighbours cells to that vertex as
-        // the indices into vertexArray
+        for (int v = 0; v < total; v++) {
+            VertexVis vd = g.getVertexDisplayAt(v);
+            if ((vd == null) || (vd.getRadius() == 0)) {
+                layoutIndex[v] = -1;
+                continue;
+            }
+            layoutIndex[v] = vertexArray.size();
+            vertexArray.add(vd);
+        }
         
+        mxRectangle initialBounds = null;
+
+        int n = vertexCount = vertexArray.size();
+
+        allocate(n);
+
+        for (int v = 0; v < total; v++) {
+            int i = layoutIndex[v];
+            if (i != -1)
+                topologyIndex[i] = v;
+        }
+
+        if ((neighborIndex == null) || (neighborIndex.length < topology.offsets[total]))
+            neighborIndex = new int[topology.offsets[total]];
+
+        int k = 0;
         for (int i = 0; i < n; i++) {
             VertexVis<V,E> vd = vertexArray.get(i);
 
             if (cellLocation[i]==null)
                 cellLocation[i] = new double[2];
 
-            // Set up the mapping from array indices to cells
-            indices.put(vd.vertex, i);
-
 			// Set the X,Y value of the internal version of the cell to
             // the center point of the vertex for better positioning
             double width = vd.getRadius()*2f; //bounds.getWidth();
             double height = vd.getRadius()*2f; //bounds.getHeight();
 
-            // Randomize (0, 0) locations
-            //TODO re-use existing location
-            double x, y;
-            if (vd==null) {
-                x = 0;
-                y = 0;
-            }
-            else {
-                x = vd.getX(); 
-                y = vd.getY();
-            }
-            
+            double x = vd.getX(); 
+            double y = vd.getY();
 
             cellLocation[i][0] = x + width / 2.0;
             cellLocation[i][1] = y + height / 2.0;
@@ -383,54 +567,22 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
             radius[i] = Math.min(width, height);
             radiusSquared[i] = radius[i] * radius[i];
         
-
-            // Moves cell location back to top-left from center locations used in
-            // algorithm, resetting the edge points is part of the transaction
-        
-        
             dispX[i] = 0;
             dispY[i] = 0;
             isMoveable[i] = true; //isVertexMovable(vertexArray[i]);
-            // Get lists of neighbours to all vertex, translate the cells
-            // obtained in indices into vertexArray and store as an array
-            // against the original cell index
-            //V v = vertexArray.get(i).getVertex();
-            //ProcessingGraphCanvas.VertexVis vd = displayed.get(v);
-
-            
-            // TODO why does a vertex disappear from the graph... make this unnecessary
-            
-            
-            V v = vd.getVertex();
-            Set<E> edges = vd.getEdges();
-            if (edges!=null) {
-                List<V> cells = new ArrayList(edges.size());
-                for (E e : edges) {
-                    V source = graph.getEdgeSource(e);
-                    V target = graph.getEdgeTarget(e);
-                    if (source!=v)  cells.add(source);
-                    else if (target!=v)  cells.add(target);
-                }
 
-                neighbors[i] = new int[cells.size()];
-
-                for (int j = 0; j < cells.size(); j++) {
-                    Integer index = indices.get(cells.get(j));
-
-                    // Check the connected cell in part of the vertex list to be
-                    // acted on by this layout
-                    if (index != null) {
-                        neighbors[i][j] = index.intValue();
-                    } // Else if index of the other cell doesn't correspond to
-                    // any cell listed to be acted upon in this layout. Set
-                    // the index to the value of this vertex (a dummy self-loop)
-                    // so the attraction force of the edge is not calculated
-                    else {
-                        neighbors[i][j] = i;
-                    }
-                }
+            // Translate the topology neighbours of each vertex into indices
+            // of vertexArray.  If the other cell is not acted upon by this
+            // layout, use the index of this vertex (a dummy self-loop) so
+            // the attraction force of the edge is not calculated
+            neighborOffsets[i] = k;
+            int v = topologyIndex[i];
+            for (int a = topology.offsets[v]; a < topology.offsets[v + 1]; a++) {
+                int j = layoutIndex[topology.targets[a]];
+                neighborIndex[k++] = (j != -1) ? j : i;
             }
         }
+        neighborOffsets[n] = k;
 
         temperature = initialTemp;
 
@@ -460,7 +612,7 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
 
         double minx = 0, miny = 0, maxx = 0, maxy = 0;
 
-        for (int i = 0; i < vertexArray.size(); i++) {
+        for (int i = 0; i < n; i++) {
             VertexVis vd = vertexArray.get(i);                
 
             if (vd != null) {
@@ -500,56 +652,186 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
         return true;
     }
 
+    @Override
+    public void start(int n, float[] x, float[] y, float[] r, int[] offsets, int[] targets) {
+        copy(n, x, y, r, offsets, targets);
+        temperature = initialTemp;
+    }
+
+    /**
+     * Keeps the temperature, raised by as much as the new vertices need to
+     * find their places: the square root of their share of the initial one.
+     */
+    @Override
+    public void update(int n, float[] x, float[] y, float[] r, int[] offsets, int[] targets, int added) {
+        copy(n, x, y, r, offsets, targets);
+        if (n > 0)
+            temperature = Math.max(temperature, initialTemp * Math.sqrt(Math.min(1.0, (double) added / n)));
+    }
+
+    private void copy(int n, float[] x, float[] y, float[] r, int[] offsets, int[] targets) {
+        vertexCount = n;
+        allocate(n);
+
+        if ((neighborIndex == null) || (neighborIndex.length < offsets[n]))
+            neighborIndex = new int[offsets[n]];
+        System.arraycopy(offsets, 0, neighborOffsets, 0, n + 1);
+        System.arraycopy(targets, 0, neighborIndex, 0, offsets[n]);
+
+        // The same cells as postUpdate, centered on the vertex
+        for (int i = 0; i < n; i++) {
+            if (cellLocation[i]==null)
+                cellLocation[i] = new double[2];
+            cellLocation[i][0] = x[i] + r[i];
+            cellLocation[i][1] = y[i] + r[i];
+
+            radius[i] = r[i] * 2;
+            radiusSquared[i] = radius[i] * radius[i];
+
+            dispX[i] = 0;
+            dispY[i] = 0;
+            isMoveable[i] = true;
+        }
+    }
+
+    @Override
+    public double iterate() {
+        calcRepulsion();
+        calcAttraction();
+        calcPositions();
+        temperature *= coolingRate;
+        return maxDisplacement;
+    }
+
+    /**
+     * Copies the positions as postUpdate sets them, centered on the origin.
+     */
+    @Override
+    public void getPositions(float[] x, float[] y) {
+        double minx = 0, miny = 0, maxx = 0, maxy = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            double r = radius[i] / 2;
+            double px = cellLocation[i][0] - r;
+            double py = cellLocation[i][1] - r;
+            if (i == 0) {
+                minx = maxx = px;
+                miny = maxy = py;
+            } else {
+                if (px < minx) minx = px;
+                if (py < miny) miny = py;
+                if (px > maxx) maxx = px;
+                if (py > maxy) maxy = py;
+            }
+        }
+
+        double dx = -(maxx+minx)/2f;
+        double dy = -(maxy+miny)/2f;
+        for (int i = 0; i < vertexCount; i++) {
+            double r = radius[i] / 2;
+            x[i] = (float) (cellLocation[i][0] - r + dx);
+            y[i] = (float) (cellLocation[i][1] - r + dy);
+        }
+    }
+
     /**
      * Takes the displacements calculated for each cell and applies them to the
      * local cache of cell positions. Limits the displacement to the current
      * temperature.
      */
     protected void calcPositions() {
-        for (int index = 0; index < vertexArray.size(); index++) {
-            if (isMoveable[index]) {
-				// Get the distance of displacement for this node for this
-                // iteration
-                double deltaLength = Math.sqrt(dispX[index] * dispX[index]
-                        + dispY[index] * dispY[index]);
-
-                if (deltaLength < 0.001) {
-                    deltaLength = 0.001;
+        if (blocks > 0) {
+            final int n = vertexCount;
+            forEachBlock(b -> {
+                double max = 0;
+                // Sum the displacements of every block, always in the same
+                // order, then clear them for the next iteration
+                for (int index = b * n / blocks; index < (b + 1) * n / blocks; index++) {
+                    double x = 0, y = 0;
+                    for (int c = 0; c < blocks; c++) {
+                        x += blockDispX[c][index];
+                        y += blockDispY[c][index];
+                        blockDispX[c][index] = 0;
+                        blockDispY[c][index] = 0;
+                    }
+                    dispX[index] = x;
+                    dispY[index] = y;
+                    max = Math.max(max, calcPosition(index));
                 }
+                blockMaxDisplacement[b] = max;
+            });
 
-				// Scale down by the current temperature if less than the
-                // displacement distance
-                double newXDisp = dispX[index] / deltaLength
-                        * Math.min(deltaLength, temperature);
-                double newYDisp = dispY[index] / deltaLength
-                        * Math.min(deltaLength, temperature);
+            maxDisplacement = 0;
+            for (int b = 0; b < blocks; b++)
+                maxDisplacement = Math.max(maxDisplacement, blockMaxDisplacement[b]);
+            return;
+        }
 
-                // reset displacements
-                dispX[index] = 0;
-                dispY[index] = 0;
+        double max = 0;
+        for (int index = 0; index < vertexCount; index++) {
+            max = Math.max(max, calcPosition(index));
+        }
+        maxDisplacement = max;
+    }
 
-                // Update the cached cell locations
-                cellLocation[index][0] += newXDisp;
-                cellLocation[index][1] += newYDisp;
+    /**
+     * Moves a cell by its displacement, limited to the temperature.
+     * @return the distance moved
+     */
+    protected double calcPosition(int index) {
+        if (isMoveable[index]) {
+            // Get the distance of displacement for this node for this
+            // iteration
+            double deltaLength = Math.sqrt(dispX[index] * dispX[index]
+                    + dispY[index] * dispY[index]);
+
+            if (deltaLength < 0.001) {
+                deltaLength = 0.001;
             }
+
+            // Scale down by the current temperature if less than the
+            // displacement distance
+            double newXDisp = dispX[index] / deltaLength
+                    * Math.min(deltaLength, temperature);
+            double newYDisp = dispY[index] / deltaLength
+                    * Math.min(deltaLength, temperature);
+
+            // reset displacements
+            dispX[index] = 0;
+            dispY[index] = 0;
+
+            // Update the cached cell locations
+            cellLocation[index][0] += newXDisp;
+            cellLocation[index][1] += newYDisp;
+
+            return Math.min(deltaLength, temperature);
         }
+        return 0;
     }
 
     /**
      * Calculates the attractive forces between all laid out nodes linked by edge
      */
     protected void calcAttraction() {
+        if (blocks > 0) {
+            forEachBlock(b -> calcAttraction(b, blocks, blockDispX[b], blockDispY[b]));
+        }
+        else {
+            calcAttraction(0, 1, dispX, dispY);
+        }
+    }
+
+    /**
+     * Calculates the attractive forces of the edge of every stride'th vertex
+     * from first, adding them to dispX and dispY
+     */
+    protected void calcAttraction(int first, int stride, double[] dispX, double[] dispY) {
 		// Check the neighbours of each vertex and calculate the attractive
         // force of the edge connecting them
-        for (int i = 0; i < vertexArray.size(); i++) {
-            if (neighbors[i]==null) continue;
-            if (cellLocation[i] == null) continue;
-            for (int k = 0; k < neighbors[i].length; k++) {
+        for (int i = first; i < vertexCount; i += stride) {
+            for (int k = neighborOffsets[i]; k < neighborOffsets[i + 1]; k++) {
                 // Get the index of the othe cell in the vertex array
-                int j = neighbors[i][k];
+                int j = neighborIndex[k];
 
-                if (cellLocation[j] == null) continue;
-                
                 // Do not proceed self-loops
                 if (i != j) {
                     double xDelta = cellLocation[i][0] - cellLocation[j][0];
@@ -570,8 +852,8 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
                     double displacementY = (yDelta / deltaLength) * force;
 
                     if (isMoveable[i]) {
-                        this.dispX[i] -= displacementX;
-                        this.dispY[i] -= displacementY;
+                        dispX[i] -= displacementX;
+                        dispY[i] -= displacementY;
                     }
 
                     if (isMoveable[j]) {
@@ -584,12 +866,31 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
     }
 
     /**
-     * Calculates the repulsive forces between all laid out nodes
+     * Calculates the repulsive forces between all laid out nodes, exactly or,
+     * for more than approximateAbove of them, by Barnes-Hut approximation
      */
     protected void calcRepulsion() {
-        int vertexCount = vertexArray.size();
+        if (vertexCount > approximateAbove) {
+            calcRepulsionApproximate(vertexCount);
+            return;
+        }
 
-        for (int i = 0; i < vertexCount; i++) {
+        if (blocks > 0) {
+            forEachBlock(b -> calcRepulsion(b, blocks, blockDispX[b], blockDispY[b]));
+        }
+        else {
+            calcRepulsion(0, 1, dispX, dispY);
+        }
+    }
+
+    /**
+     * Calculates the repulsive forces between every stride'th vertex from
+     * first and the vertex after it, adding them to dispX and dispY.
+     * Coincident nodes are separated by a jitter which is the same for the
+     * same pair, so the layout does not depend on Math.random.
+     */
+    protected void calcRepulsion(int first, int stride, double[] dispX, double[] dispY) {
+        for (int i = first; i < vertexCount; i += stride) {
             for (int j = i; j < vertexCount; j++) {
                 // Exits if the layout is no longer allowed to run
                 if (!allowedToRun) {
@@ -601,11 +902,11 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
                     double yDelta = cellLocation[i][1] - cellLocation[j][1];
 
                     if (xDelta == 0) {
-                        xDelta = 0.01 + Math.random();
+                        xDelta = BarnesHutTree.jitter(i, j);
                     }
 
                     if (yDelta == 0) {
-                        yDelta = 0.01 + Math.random();
+                        yDelta = BarnesHutTree.jitter(j, i);
                     }
 
                     // Distance between nodes
@@ -643,6 +944,69 @@ public class FastOrganicLayout<V, E> implements GraphDisplay<V,E> {
         }
     }
 
+    /**
+     * Calculates the repulsive forces on each laid out node from a quadtree of
+     * all of them, in which distant groups of nodes act as one.
+     */
+    protected void calcRepulsionApproximate(int vertexCount) {
+        if (tree == null)
+            tree = new BarnesHutTree();
+        tree.build(cellLocation, radius, vertexCount);
+
+        if (blocks > 0) {
+            forEachBlock(b -> calcRepulsionApproximate(vertexCount, b, blocks, blockDispX[b], blockDispY[b], blockStack[b]));
+        }
+        else {
+            calcRepulsionApproximate(vertexCount, 0, 1, dispX, dispY, blockStack[0]);
+        }
+    }
+
+    protected void calcRepulsionApproximate(int vertexCount, int first, int stride, double[] dispX, double[] dispY, int[] stack) {
+        for (int i = first; i < vertexCount; i += stride) {
+            // Exits if the layout is no longer allowed to run
+            if (!allowedToRun) {
+                return;
+            }
+
+            if (isMoveable[i]) {
+                tree.repel(i, theta, forceConstantSquared, minDistanceLimit, maxDistanceLimit, dispX, dispY, stack);
+            }
+        }
+    }
+
+    /**
+     * Runs f on each block, 0 .. blocks-1, in the shared pool, returning
+     * when all are done.
+     */
+    protected void forEachBlock(IntConsumer f) {
+        getPool().invoke(new Blocks(f, 0, blocks));
+    }
+
+    /**
+     * Runs a function on a range of blocks, splitting it in halves between
+     * the threads of a pool.
+     */
+    static class Blocks extends RecursiveAction {
+        final IntConsumer f;
+        final int from, to;
+
+        Blocks(IntConsumer f, int from, int to) {
+            this.f = f;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected void compute() {
+            if (to - from == 1) {
+                f.accept(from);
+            }
+            else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Blocks(f, from, mid), new Blocks(f, mid, to));
+            }
+        }
+    }
+
     @Override
     public boolean preUpdate(AbstractGraphVis<V,E> g) {
         return true;
@@ -22,34 +22,24 @@ import automenta.vivisect.graph.AbstractGraphVis;
 import automenta.vivisect.graph.EdgeVis;
 import automenta.vivisect.graph.GraphDisplay;
 import automenta.vivisect.graph.VertexVis;
-import java.util.concurrent.atomic.AtomicBoolean;
 import org.opennars.entity.Concept;
 import org.opennars.entity.TaskLink;
 
-import org.apache.commons.math3.linear.ArrayRealVector;
-
 /**
  *
  * @author me
  */
 public class HyperassociativeLayout implements GraphDisplay {
 
-    HyperassociativeMap h = null;
+    DenseHyperassociativeMap h = null;
     float spcing = 200.0f;
     
-    private AtomicBoolean newNode = new AtomicBoolean(false);
-    
     @Override
     public boolean preUpdate(AbstractGraphVis g) {
         
         
         if (h == null)
-            h = new HyperassociativeMap(g.getGraph(), HyperassociativeMap.Euclidean, 2) {
-                @Override
-                protected ArrayRealVector newNodeCoordinates(Object node) {
-                    newNode.set(true);
-                    return super.newNodeCoordinates(node);
-                }
+            h = new DenseHyperassociativeMap(2) {
 
             @Override
             public double getEdgeWeight(Object e) {
@@ -70,13 +60,9 @@ public class HyperassociativeLayout implements GraphDisplay {
 
                 
             };    
-        else {
-            if (newNode.get()) {
-                h.resetLearning();
-                newNode.set(false);
-            }
-            
-            h.setGraph(g.getGraph());
+        
+        if (h.setTopology(g.getTopology()) > 0) {
+            h.resetLearning();
         }
         
         h.align();
@@ -90,13 +76,12 @@ public class HyperassociativeLayout implements GraphDisplay {
         if (v == null) return;
         if (v.vertex == null) return;                
         
-        ArrayRealVector c = h.getPosition(v.vertex); 
-        if (c==null) return;
+        int i = h.indexOf(v.vertex);
+        if (i == -1) return;
         
         
-        double[] cc = c.getDataRef();
-        v.tx = (float)cc[0] * spcing;
-        v.ty = (float)cc[1] * spcing;
+        double[] cc = h.getCoordinates();
+        v.setPosition((float)cc[i*2] * spcing, (float)cc[i*2+1] * spcing);
         
     }
 
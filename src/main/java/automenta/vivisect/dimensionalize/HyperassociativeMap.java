@@ -54,17 +54,17 @@ import org.jgrapht.Graph;
  */
 public class HyperassociativeMap<N, E> {
 
-    private static final double REPULSIVE_WEAKNESS = 2.0;
-    private static final double ATTRACTION_STRENGTH = 4.0;
+    static final double REPULSIVE_WEAKNESS = 2.0;
+    static final double ATTRACTION_STRENGTH = 4.0;
     private static final double EQUILIBRIUM_ALIGNMENT_FACTOR = 0.005;
-    private static final double LEARNING_RATE_INCREASE_FACTOR = 0.95;
-    private static final double LEARNING_RATE_PROCESSING_ADJUSTMENT = 1.01;
+    static final double LEARNING_RATE_INCREASE_FACTOR = 0.95;
+    static final double LEARNING_RATE_PROCESSING_ADJUSTMENT = 1.01;
     
-    private static final double DEFAULT_LEARNING_RATE = 0.4;
+    static final double DEFAULT_LEARNING_RATE = 0.4;
     private static final double DEFAULT_MAX_MOVEMENT = 0.0;
     private static final double DEFAULT_TOTAL_MOVEMENT = 0.0;
-    private static final double DEFAULT_ACCEPTABLE_DISTANCE_FACTOR = 0.85;
-    private static final double DEFAULT_EQUILIBRIUM_DISTANCE = 1.0;
+    static final double DEFAULT_ACCEPTABLE_DISTANCE_FACTOR = 0.85;
+    static final double DEFAULT_EQUILIBRIUM_DISTANCE = 1.0;
 
     /** when distance between nodes exceeds this factor times target distance, repulsion is not applied.  set to positive infinity to completely disable */
     double maxRepulsionDistance = 12.0;
@@ -489,7 +489,7 @@ public class HyperassociativeMap<N, E> {
      * @param value the input.
      * @return the inverse hyperbolic tangent of value.
      */
-    private static double atanh(final double value) {
+    static double atanh(final double value) {
         return Math.log(Math.abs((value + 1.0) / (1.0 - value))) / 2;
     }
 
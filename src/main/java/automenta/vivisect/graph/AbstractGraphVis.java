@@ -16,14 +16,18 @@ package automenta.vivisect.graph;
 
 
 
+import automenta.vivisect.PhaseTimer;
 import automenta.vivisect.Vis;
 import automenta.vivisect.swing.PCanvas;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
-import org.apache.commons.math3.util.FastMath;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jgrapht.Graph;
+import static processing.core.PConstants.LEFT;
 import static processing.core.PConstants.MITER;
 import static processing.core.PConstants.SQUARE;
 import processing.core.PGraphics;
@@ -43,6 +47,71 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
 
     Graph<V,E> currentGraph;
 
+    /** compact topology of currentGraph, rebuilt with it */
+    final CSRGraph<V,E> topology = new CSRGraph();
+    /** durations of the phases of updating and drawing */
+    final PhaseTimer timer = new PhaseTimer();
+
+    /** animated state of all vertex displays */
+    final VertexStore store = new VertexStore();
+    /** displays of removed vertices, for reuse */
+    private final ArrayDeque<VertexVis<V,E>> freeVertices = new ArrayDeque();
+
+    /** vertex display of each topology vertex id */
+    VertexVis<V,E>[] vertexVis = new VertexVis[0];
+    /** edge display of each topology edge id */
+    EdgeVis<V,E>[] edgeVis = new EdgeVis[0];
+
+    /** drawn vertex positions by topology id, indexed each frame for culling */
+    final SpatialGrid grid = new SpatialGrid();
+    float[] px = new float[0], py = new float[0];
+    /** edges collected for drawing, and the frame each edge was last collected */
+    private int[] visibleEdges = new int[0];
+    private int[] edgeMark = new int[0];
+    private int frame;
+    /** ids of the vertices in the view, copied from the grid */
+    private int[] visibleIds = new int[0];
+    /** topology.set calls so far; edge ids may change with each */
+    private int topologyUpdates;
+
+    /**
+     * edges last measured longer than half of longEdgeLength: an edge crossing
+     * the view has an end within longEdgeLength of it, or is one of these
+     */
+    private int[] longEdges = new int[0];
+    private int numLongEdges;
+    private float longEdgeLength;
+    private int longEdgesUpdate = -1;
+    /** measurement in progress over several frames, or -1 */
+    private int[] nextLongEdges = new int[0];
+    private int numNextLongEdges;
+    private float sweepLength;
+    private int sweepPos = -1;
+    /** frames over which the edges are measured again while vertices move */
+    static final int sweepFrames = 8;
+
+    /** edges of the frame, drawn by color and thickness */
+    final EdgeBatch edgeBatch = new EdgeBatch();
+    private final float[] arrowQuad = new float[8];
+
+    /** vertex under the cursor, drawn highlighted with its edges */
+    private volatile V hovered;
+    int highlightColor = 0xffffd040;
+    /** largest vertex size drawn in the last frame */
+    private float drawnMaxRadius;
+    /**
+     * last cursor position and pending left click, recorded by the mouse
+     * events and picked in draw(), which owns the index they are picked from
+     */
+    private volatile float[] cursor;
+    private final AtomicReference<float[]> click = new AtomicReference();
+
+    /** labels of the frame, drawn after all vertices */
+    final LabelLayer labels = new LabelLayer();
+
+    /** when not null, large graphs are displayed with clusters collapsed into supernodes */
+    private GraphLOD<V,E> lod;
+
     boolean updateNext = true;
     
     //bounds of last positioned vertex
@@ -63,8 +132,12 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
 
     float arrowHeadScale = 1f/16f;
     static final float vertexTargetThreshold = 4f;
+    /** on-screen distance from their targets, in pixels, below which vertices are considered at rest */
+    static final float restThreshold = 0.5f;
+    /** vertices not at rest in the last frame */
+    private int moving;
     private PGraphics graphics;
-    private PCanvas canvas;
+    private volatile PCanvas canvas;
 
     
     public AbstractGraphVis(GraphDisplay display) {
@@ -74,6 +147,24 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
 
     public void setUpdateNext() {
         updateNext = true;
+        requestRedraw();
+    }
+
+    /** asks the canvas, if it draws on demand, for another frame; may be called from any thread */
+    public void requestRedraw() {
+        PCanvas c = canvas;
+        if (c != null)
+            c.requestRedraw();
+    }
+
+    @Override
+    public PhaseTimer getTimer() {
+        return timer;
+    }
+
+    @Override
+    public boolean needsRedraw() {
+        return updateNext || (moving > 0);
     }
     
     public void setDisplay(GraphDisplay display) {
@@ -83,11 +174,34 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
     public GraphDisplay getDisplay() {
         return display;
     }
+
+    public void setLevelOfDetail(GraphLOD<V,E> lod) {
+        this.lod = lod;
+        setUpdateNext();
+    }
+
+    public GraphLOD<V,E> getLevelOfDetail() {
+        return lod;
+    }
+
+    public LabelLayer getLabels() {
+        return labels;
+    }
     
 
     public VertexVis getVertexDisplay(V v) {
         return vertices.get(v);
     }
+
+    /** vertex display of a vertex id of getTopology() */
+    public VertexVis<V,E> getVertexDisplayAt(int id) {
+        return vertexVis[id];
+    }
+
+    /** compact id-based topology of the current graph */
+    public CSRGraph<V,E> getTopology() {
+        return topology;
+    }
     
 
 
@@ -101,7 +215,18 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
             return v;
         }
         
-        v = new VertexVis(getCanvas(), o);
+        v = freeVertices.poll();
+        if (v != null)
+            v.reset(o);
+        else
+            v = new VertexVis(getCanvas(), store, o);
+        if (lod != null) {
+            //start where the vertex was last shown, as a supernode or as a member of one
+            VertexVis from = vertices.get(lod.origin(o));
+            if (from != null) {
+                v.setCurrentPosition(from.getCurrentX(), from.getCurrentY());
+            }
+        }
         vertices.put(o, v);
 
         return v;
@@ -134,7 +259,14 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
     public void updateGraph() {
         
             
-        if (hasUpdate() || (updateNext) || display.preUpdate(this)) {
+        boolean update = hasUpdate() || (updateNext);
+        if (!update) {
+            long t = timer.start();
+            update = display.preUpdate(this);
+            timer.record("preUpdate", t);
+        }
+
+        if (update) {
 
             updateNext = false;
 
@@ -142,24 +274,55 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
                 deadVertices.clear();
                 deadEdges.clear();
                 
+                long t = timer.start();
                 currentGraph = getGraph();
+                t = timer.record("graph", t);
                 if (currentGraph == null) {
+                    for (final VertexVis<V,E> v : vertices.values())
+                        release(v);
                     vertices.clear();
                     edges.clear();
+                    topology.clear();
                     return;
                 }
+                if (lod != null) {
+                    currentGraph = lod.apply(currentGraph, this);
+                    t = timer.record("lod", t);
+                }
                 
                 deadVertices.addAll(vertices.keySet());
                 deadEdges.addAll(edges.keySet());
                 
-                for (final V v : currentGraph.vertexSet())
-                   updateVertex(v);
+                topology.set(currentGraph);
+                topologyUpdates++;
+                t = timer.record("topology", t);
+
+                int n = topology.vertexCount();
+                if (vertexVis.length < n)
+                    vertexVis = new VertexVis[n];
+                for (int i = 0; i < n; i++) {
+                    vertexVis[i] = updateVertex(topology.vertex(i));
+                    vertexVis[i].id = i;
+                }
+                for (int i = n; i < vertexVis.length && vertexVis[i]!=null; i++)
+                    vertexVis[i] = null;
+                t = timer.record("vertex style", t);
                 
-                for (final E e : currentGraph.edgeSet())
-                    updateEdge(e);
+                int m = topology.edgeCount();
+                if (edgeVis.length < m)
+                    edgeVis = new EdgeVis[m];
+                for (int i = m; i < edgeVis.length && edgeVis[i]!=null; i++)
+                    edgeVis[i] = null;
+                for (int i = 0; i < m; i++) {
+                    EdgeVis<V,E> ev = edgeVis[i] = updateEdge(topology.edge(i));
+                    //resolve endpoints by id rather than through the graph
+                    ev.elem1 = vertexVis[topology.edgeSource[i]];
+                    ev.elem2 = vertexVis[topology.edgeTarget[i]];
+                }
+                t = timer.record("edge style", t);
                 
                 for (final V v : deadVertices)
-                    vertices.remove(v);
+                    release(vertices.remove(v));
                 for (final E e : deadEdges)
                     edges.remove(e);
             }
@@ -168,6 +331,11 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
     }
 
     
+    private void release(final VertexVis<V,E> v) {
+        v.release();
+        freeVertices.add(v);
+    }
+
     @Override public void init(PCanvas canvas) {
         this.canvas = canvas;
     }
@@ -188,39 +356,307 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
         this.graphics = g;
         
         if (currentGraph == null) {
+            //nothing to click
+            click.set(null);
             return true;
         }
 
         /*synchronized (vertices)*/ {
+            final int n = topology.vertexCount();
+
+            //animate every vertex, and index the positions to draw only those in view
+            if (px.length < n) {
+                px = new float[n];
+                py = new float[n];
+            }
+            PCanvas c = getCanvas();
+            final boolean onScreen = (c != null) && (g == c.g);
+            long t = timer.start();
+            moving = store.interpolate(onScreen ? restThreshold / c.getZoom() : vertexTargetThreshold);
+            final float[] x = store.x, y = store.y, radius = store.radius;
+            float maxRadius = 0;
+            for (int i = 0; i < n; i++) {
+                final VertexVis<V,E> v = vertexVis[i];
+                final int slot = v.slot;
+                final float scale = v.scale;
+                px[i] = x[slot] * scale;
+                py[i] = y[slot] * scale;
+                float r = radius[slot] * scale;
+                if (r > maxRadius) maxRadius = r;
+            }
+            grid.build(px, py, n);
+            drawnMaxRadius = maxRadius;
+            pickCursor(c);
+            t = timer.record("animate", t);
+
+            int[] visible = null;
+            int numNodes = n;
+            float minX = 0, minY = 0, maxX = 0, maxY = 0;
+            if (onScreen) {
+                //world rectangle on screen, extended by the largest vertex size
+                minX = c.getWorldX(0) - maxRadius;
+                minY = c.getWorldY(0) - maxRadius;
+                maxX = c.getWorldX(c.width) + maxRadius;
+                maxY = c.getWorldY(c.height) + maxRadius;
+                numNodes = grid.query(minX, minY, maxX, maxY);
+                if (numNodes < n) {
+                    //copied, as collectEdges queries the grid again
+                    if (visibleIds.length < numNodes)
+                        visibleIds = new int[Math.max(numNodes, visibleIds.length * 2)];
+                    System.arraycopy(grid.getFound(), 0, visibleIds, 0, numNodes);
+                    visible = visibleIds;
+                }
+            }
+            t = timer.record("cull", t);
+
             // for speed
             g.noFill();
             g.strokeCap(SQUARE);
             g.strokeJoin(MITER); //https://www.processing.org/reference/strokeJoin_.html
 
-            
-            int numEdges = currentGraph.edgeSet().size();            
-            if (numEdges < maxEdges) {
-                
-                for (final EdgeVis d : edges.values()) {
-                    d.draw(this, g);
+            if (visible == null) {
+                int numEdges = topology.edgeCount();
+                if (numEdges < maxEdges) {
+                    for (int e = 0; e < numEdges; e++) {
+                        edgeVis[e].draw(this, edgeBatch);
+                    }
+                    edgeBatch.flush(g);
+                }
+            }
+            else {
+                int numEdges = collectEdges(minX, minY, maxX, maxY);
+                if (numEdges < maxEdges) {
+                    for (int k = 0; k < numEdges; k++) {
+                        edgeVis[visibleEdges[k]].draw(this, edgeBatch);
+                    }
+                    edgeBatch.flush(g);
                 }
-                
             }
             
+            t = timer.record("edges", t);
+
             g.noStroke();
 
-            int numNodes = vertices.size();
             if (numNodes < maxNodes) {
-                for (final VertexVis d : vertices.values()) {
-                    d.draw(this, g);
+                for (int k = 0; k < numNodes; k++) {
+                    vertexVis[(visible == null) ? k : visible[k]].render(g);
                 }
             }
+            if (hovered != null)
+                drawHovered(g, c);
+            t = timer.record("vertices", t);
+
+            if (numNodes < maxNodesWithLabels) {
+                if (onScreen) {
+                    labels.draw(g, vertexVis, visible, numNodes, c.getZoom(),
+                            -c.getWorldX(0) * c.getZoom(), -c.getWorldY(0) * c.getZoom(), c.width, c.height);
+                }
+                else {
+                    labels.draw(g, vertexVis, visible, numNodes, 1f, 0, 0, 0, 0);
+                }
+            }
+            timer.record("labels", t);
         }
 
+        long t = timer.start();
         display.postUpdate(this);
+        timer.record("postUpdate", t);
 
         return true;
     }
+
+    /** draws the hovered vertex's edges in the highlight color, and a ring around it */
+    private void drawHovered(final PGraphics g, final PCanvas c) {
+        final VertexVis<V,E> h = vertices.get(hovered);
+        if ((h == null) || (h.id == -1) || (h.id >= topology.vertexCount())) {
+            hovered = null;
+            return;
+        }
+
+        final int[] offsets = topology.offsets;
+        for (int p = offsets[h.id]; p < offsets[h.id + 1]; p++) {
+            edgeVis[topology.adjacentEdge[p]].draw(this, edgeBatch, highlightColor);
+        }
+        edgeBatch.flush(g);
+
+        float r = h.getRadius() * h.scale;
+        g.noFill();
+        g.stroke(highlightColor);
+        g.strokeWeight((c != null) ? 2f / c.getZoom() : 2f);
+        g.ellipse(h.getCurrentX() * h.scale, h.getCurrentY() * h.scale, r * 1.2f, r * 1.2f);
+        g.noStroke();
+    }
+
+    /**
+     * finds the vertex drawn at a position, using the index of the last frame;
+     * only to be called from the thread drawing this
+     * @param maxDist distance allowed outside the vertex's shape
+     * @return topology id of the vertex whose center is nearest, or -1 if none is in reach
+     */
+    public int pick(final float x, final float y, final float maxDist) {
+        final int n = Math.min(grid.size(), topology.vertexCount());
+        if (n == 0) return -1;
+
+        int i = grid.nearest(x, y, maxDist + drawnMaxRadius / 2f);
+        if ((i == -1) || (i >= n)) return -1;
+
+        final VertexVis<V,E> v = vertexVis[i];
+        float reach = v.getRadius() * v.scale / 2f + maxDist;
+        float dx = px[i] - x, dy = py[i] - y;
+        return (dx * dx + dy * dy <= reach * reach) ? i : -1;
+    }
+
+    /** updates the hovered vertex, which may move under the cursor, and handles a pending click */
+    private void pickCursor(final PCanvas c) {
+        final float maxDist = (c != null) ? c.getSelectionDistance() : 0;
+
+        final float[] m = cursor;
+        if (m != null) {
+            int i = pick(m[0], m[1], maxDist);
+            hovered = (i == -1) ? null : vertexVis[i].vertex;
+        }
+
+        final float[] k = click.getAndSet(null);
+        if (k != null) {
+            int i = pick(k[0], k[1], maxDist);
+            if (i != -1)
+                onVertexClicked(vertexVis[i]);
+        }
+    }
+
+    public V getHovered() {
+        return hovered;
+    }
+
+    @Override
+    public void onMouseMoved(final float x, final float y) {
+        cursor = new float[] { x, y };
+        requestRedraw();
+    }
+
+    @Override
+    public void onMouseClicked(final float x, final float y, final int button) {
+        if (button != LEFT) return;
+        click.set(new float[] { x, y });
+        requestRedraw();
+    }
+
+    /** called from draw() when a vertex is clicked with the left button */
+    protected void onVertexClicked(final VertexVis<V,E> v) {
+    }
+
+    /**
+     * collects the edges crossing the view into visibleEdges, in ascending
+     * order: those of the vertices near the view, and the long edges
+     * @return number of edges
+     */
+    private int collectEdges(final float minX, final float minY, final float maxX, final float maxY) {
+        final int m = topology.edgeCount();
+        if (edgeMark.length < m) {
+            edgeMark = new int[m];
+            frame = 0;
+        }
+        if (++frame == 0) {
+            Arrays.fill(edgeMark, 0);
+            frame = 1;
+        }
+        updateLongEdges(Math.max(maxX - minX, maxY - minY) / 2f);
+
+        final float reach = longEdgeLength;
+        final int numNear = grid.query(minX - reach, minY - reach, maxX + reach, maxY + reach);
+        final int[] near = grid.getFound();
+        final int[] offsets = topology.offsets;
+        final int[] adjacentEdge = topology.adjacentEdge;
+        int count = 0;
+        for (int k = 0; k < numNear; k++) {
+            int i = near[k];
+            for (int p = offsets[i]; p < offsets[i + 1]; p++)
+                count = collectEdge(adjacentEdge[p], count, minX, minY, maxX, maxY);
+        }
+        for (int k = 0; k < numLongEdges; k++)
+            count = collectEdge(longEdges[k], count, minX, minY, maxX, maxY);
+
+        Arrays.sort(visibleEdges, 0, count);
+        return count;
+    }
+
+    private int collectEdge(final int e, int count,
+            final float minX, final float minY, final float maxX, final float maxY) {
+        if (edgeMark[e] == frame) return count;
+        edgeMark[e] = frame;
+        final int s = topology.edgeSource[e], d = topology.edgeTarget[e];
+        if (!crosses(px[s], py[s], px[d], py[d], minX, minY, maxX, maxY)) return count;
+        if (count == visibleEdges.length)
+            visibleEdges = Arrays.copyOf(visibleEdges, Math.max(16, count * 2));
+        visibleEdges[count++] = e;
+        return count;
+    }
+
+    /**
+     * measures the edges again, all at once when the topology was set, or
+     * over sweepFrames frames while vertices move or when the view size
+     * is far from the one measured for
+     */
+    private void updateLongEdges(final float viewLength) {
+        final int m = topology.edgeCount();
+        if (longEdgesUpdate != topologyUpdates) {
+            longEdgesUpdate = topologyUpdates;
+            startSweep(viewLength);
+            sweep(m);
+            return;
+        }
+        if ((sweepPos == -1) && ((moving > 0) ||
+                (viewLength > longEdgeLength * 4) || (viewLength * 4 < longEdgeLength)))
+            startSweep(viewLength);
+        if (sweepPos != -1)
+            sweep((m + sweepFrames - 1) / sweepFrames);
+    }
+
+    private void startSweep(final float length) {
+        sweepLength = length;
+        sweepPos = 0;
+        numNextLongEdges = 0;
+    }
+
+    private void sweep(final int numEdges) {
+        final int m = topology.edgeCount();
+        final int[] edgeSource = topology.edgeSource, edgeTarget = topology.edgeTarget;
+        final float limit = sweepLength / 2;
+        final int end = Math.min(m, sweepPos + Math.max(1, numEdges));
+        for (int e = sweepPos; e < end; e++) {
+            int s = edgeSource[e], d = edgeTarget[e];
+            float dx = px[d] - px[s], dy = py[d] - py[s];
+            if (dx * dx + dy * dy <= limit * limit) continue;
+            if (numNextLongEdges == nextLongEdges.length)
+                nextLongEdges = Arrays.copyOf(nextLongEdges, Math.max(16, numNextLongEdges * 2));
+            nextLongEdges[numNextLongEdges++] = e;
+        }
+        sweepPos = end;
+        if (end == m) {
+            int[] l = longEdges;
+            longEdges = nextLongEdges;
+            nextLongEdges = l;
+            numLongEdges = numNextLongEdges;
+            longEdgeLength = sweepLength;
+            sweepPos = -1;
+        }
+    }
+
+    /** whether a line segment intersects a rectangle */
+    static boolean crosses(final float x1, final float y1, final float x2, final float y2,
+            final float minX, final float minY, final float maxX, final float maxY) {
+        if ((Math.max(x1, x2) < minX) || (Math.min(x1, x2) > maxX) ||
+                (Math.max(y1, y2) < minY) || (Math.min(y1, y2) > maxY))
+            return false;
+
+        //the bounds overlap, so it intersects unless all corners are on the same side of its line
+        final float dx = x2 - x1, dy = y2 - y1;
+        float a = dx * (minY - y1) - dy * (minX - x1);
+        float b = dx * (minY - y1) - dy * (maxX - x1);
+        float c = dx * (maxY - y1) - dy * (minX - x1);
+        float d = dx * (maxY - y1) - dy * (maxX - x1);
+        return !(((a > 0) && (b > 0) && (c > 0) && (d > 0)) || ((a < 0) && (b < 0) && (c < 0) && (d < 0)));
+    }
     
     
     public void resurrectVertex(V v) {
@@ -229,32 +665,18 @@ abstract public class AbstractGraphVis<V, E> implements Vis {
     
 
  
-    /* TODO avoid using transform, just calculation coordinates in current transform */
     void drawArrow(final PGraphics g, final float x1, final float y1, float x2, float y2, float destinationRadius) {
-        float dx = x2-x1;
-        float dy = y2-y1;
-        
-        float angle = (float) (FastMath.atan2(dy, dx));
-
-        final float arrowAngle = (float)Math.PI/12f + g.strokeWeight/200f;
         final float arrowHeadRadius = /*len **/ arrowHeadScale * (g.strokeWeight*16f);
         if (arrowHeadRadius > 0) {
-
-            float len = (float) FastMath.sqrt(dx*dx + dy*dy) - destinationRadius;
-            if (len <= 0) return;
-            
-            x2 = (float)FastMath.cos(angle) * len  + x1;
-            y2 = (float)FastMath.sin(angle) * len  + y1;
-            
-            
-            float plx = (float)FastMath.cos(angle-Math.PI-arrowAngle) * arrowHeadRadius; 
-            float ply = (float)FastMath.sin(angle-Math.PI-arrowAngle) * arrowHeadRadius; 
-            float prx = (float)FastMath.cos(angle-Math.PI+arrowAngle) * arrowHeadRadius;
-            float pry = (float)FastMath.sin(angle-Math.PI+arrowAngle) * arrowHeadRadius; 
+            final double arrowAngle = EdgeBatch.arrowAngle(g.strokeWeight);
+            final float[] q = arrowQuad;
+            if (!EdgeBatch.arrow(q, 0, x1, y1, x2, y2, destinationRadius, arrowHeadRadius,
+                    (float)Math.cos(arrowAngle), (float)Math.sin(arrowAngle)))
+                return;
 
             g.fill(g.strokeColor);
             g.noStroke();
-            g.quad(x2, y2, x2 + prx, y2 + pry, x1, y1, x2 + plx, y2 + ply);
+            g.quad(q[0], q[1], q[2], q[3], q[4], q[5], q[6], q[7]);
             g.noFill();
         }
     }
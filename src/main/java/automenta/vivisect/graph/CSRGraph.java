@@ -0,0 +1,282 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jgrapht.Graph;
+
+/**
+ * Compact, read-only topology of a graph for display: vertices are numbered
+ * 0..n-1 and adjacency is stored in compressed sparse row form
+ * (offsets, targets, weights), so layout and render passes can traverse
+ * it with primitive array accesses instead of per-edge object lookups.
+ *
+ * The adjacency is undirected (each edge appears in the rows of both of its
+ * endpoints), which is what the layouts need; the direction of each edge is
+ * kept in edgeSource/edgeTarget.
+ *
+ * Instances are rebuilt from the source Graph, which remains the model used
+ * by graph producers; this is only a view of it.
+ */
+public class CSRGraph<V, E> {
+
+    private static final int[] noInts = new int[0];
+    private static final float[] noFloats = new float[0];
+
+    /** vertex id -&gt; vertex */
+    private Object[] vertices;
+    private Map<V, Integer> ids;
+    private int numVertices;
+
+    /** edge id -&gt; edge, source vertex id, target vertex id */
+    private Object[] edges;
+    public int[] edgeSource = noInts, edgeTarget = noInts;
+    private int numEdges;
+
+    /** row i of the adjacency is targets[offsets[i] .. offsets[i+1]), in ascending order */
+    public int[] offsets = new int[1];
+    public int[] targets = noInts;
+    public float[] weights = noFloats;
+    /** edge id of each adjacency entry */
+    public int[] adjacentEdge = noInts;
+
+    //the arrays of the previous build, compared with the next and then reused for it
+    private Object[] spareVertices;
+    private Map<V, Integer> spareIds;
+    private int[] spareOffsets = new int[1], spareTargets = noInts, spareAdjacentEdge = noInts;
+    private float[] spareWeights = noFloats;
+
+    //rows in edge order, before sorting
+    private int[] rowTargets = noInts, rowEdge = noInts;
+    private float[] rowWeights = noFloats;
+
+    private int[] cursor = noInts;
+    private final List<V> added = new ArrayList();
+
+    /** incremented each time the vertex ids or the adjacency change */
+    private int version;
+
+    public CSRGraph() {
+        vertices = new Object[0];
+        spareVertices = new Object[0];
+        edges = new Object[0];
+        ids = new HashMap();
+        spareIds = new HashMap();
+    }
+
+    public CSRGraph(Graph<V, E> g) {
+        this();
+        set(g);
+    }
+
+    /**
+     * rebuilds this from a graph, reusing the arrays when large enough.
+     * Vertices which were already present keep their ids where possible, and
+     * the rows are sorted, so rebuilding from the same vertices and edges
+     * gives the same topology and version regardless of their order.
+     */
+    public CSRGraph<V, E> set(Graph<V, E> g) {
+        final int n = g.vertexSet().size();
+
+        final Map<V, Integer> prevIds = ids;
+        ids = spareIds;
+        spareIds = prevIds;
+        ids.clear();
+
+        Object[] next = spareVertices;
+        if (next.length < n)
+            next = new Object[n];
+        added.clear();
+        for (V v : g.vertexSet()) {
+            Integer old = prevIds.get(v);
+            if ((old != null) && (old < n)) {
+                next[old] = v;
+                ids.put(v, old);
+            }
+            else {
+                added.add(v);
+            }
+        }
+        int free = 0;
+        for (V v : added) {
+            while (next[free] != null)
+                free++;
+            next[free] = v;
+            ids.put(v, free);
+        }
+        added.clear();
+
+        boolean changed = (n != numVertices);
+        for (int i = 0; (i < n) && !changed; i++)
+            changed = !next[i].equals(vertices[i]);
+
+        Arrays.fill(vertices, null);
+        spareVertices = vertices;
+        vertices = next;
+        numVertices = n;
+
+        int m = g.edgeSet().size();
+        if (edges.length < m) {
+            edges = new Object[m];
+            edgeSource = new int[m];
+            edgeTarget = new int[m];
+        }
+        else {
+            Arrays.fill(edges, m, edges.length, null);
+        }
+
+        int[] nextOffsets = spareOffsets;
+        if (nextOffsets.length < n + 1)
+            nextOffsets = new int[n + 1];
+        else
+            Arrays.fill(nextOffsets, 0, n + 1, 0);
+
+        int j = 0;
+        for (E e : g.edgeSet()) {
+            Integer s = ids.get(g.getEdgeSource(e));
+            Integer t = ids.get(g.getEdgeTarget(e));
+            if ((s == null) || (t == null)) continue;
+
+            edges[j] = e;
+            edgeSource[j] = s;
+            edgeTarget[j] = t;
+            nextOffsets[s + 1]++;
+            if (!s.equals(t))
+                nextOffsets[t + 1]++;
+            j++;
+        }
+        numEdges = j;
+
+        for (int k = 0; k < n; k++)
+            nextOffsets[k + 1] += nextOffsets[k];
+
+        int adj = nextOffsets[n];
+        if (rowTargets.length < adj) {
+            rowTargets = new int[adj];
+            rowWeights = new float[adj];
+            rowEdge = new int[adj];
+        }
+        int[] nextTargets = spareTargets, nextAdjacentEdge = spareAdjacentEdge;
+        float[] nextWeights = spareWeights;
+        if (nextTargets.length < adj) {
+            nextTargets = new int[adj];
+            nextWeights = new float[adj];
+            nextAdjacentEdge = new int[adj];
+        }
+
+        //fill rows in edge order, using a cursor per row which starts at its offset
+        if (cursor.length < n)
+            cursor = new int[n];
+        System.arraycopy(nextOffsets, 0, cursor, 0, n);
+        for (int e = 0; e < numEdges; e++) {
+            int s = edgeSource[e], t = edgeTarget[e];
+            float w = (float) g.getEdgeWeight((E) edges[e]);
+
+            int p = cursor[s]++;
+            rowTargets[p] = t;
+            rowWeights[p] = w;
+            rowEdge[p] = e;
+
+            if (s != t) {
+                p = cursor[t]++;
+                rowTargets[p] = s;
+                rowWeights[p] = w;
+                rowEdge[p] = e;
+            }
+        }
+
+        //sort the rows: the entries of row t are those with target t in the other rows, as the adjacency is symmetric
+        System.arraycopy(nextOffsets, 0, cursor, 0, n);
+        for (int t = 0; t < n; t++) {
+            for (int q = nextOffsets[t]; q < nextOffsets[t + 1]; q++) {
+                int p = cursor[rowTargets[q]]++;
+                nextTargets[p] = t;
+                nextWeights[p] = rowWeights[q];
+                nextAdjacentEdge[p] = rowEdge[q];
+            }
+        }
+
+        if (!changed) {
+            for (int k = 1; (k <= n) && !changed; k++)
+                changed = (nextOffsets[k] != offsets[k]);
+            for (int p = 0; (p < adj) && !changed; p++)
+                changed = (nextTargets[p] != targets[p]);
+        }
+
+        spareOffsets = offsets;
+        spareTargets = targets;
+        spareWeights = weights;
+        spareAdjacentEdge = adjacentEdge;
+        offsets = nextOffsets;
+        targets = nextTargets;
+        weights = nextWeights;
+        adjacentEdge = nextAdjacentEdge;
+
+        if (changed)
+            version++;
+
+        return this;
+    }
+
+    public CSRGraph<V, E> clear() {
+        if (numVertices > 0)
+            version++;
+        ids.clear();
+        Arrays.fill(vertices, null);
+        Arrays.fill(edges, null);
+        numVertices = numEdges = 0;
+        if (offsets.length > 0)
+            offsets[0] = 0;
+        return this;
+    }
+
+    /**
+     * changes whenever vertex ids or adjacency do, so users can tell whether to
+     * copy the topology again; edge ids and weights may change without it
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int vertexCount() {
+        return numVertices;
+    }
+
+    public int edgeCount() {
+        return numEdges;
+    }
+
+    /** @return the id of a vertex, or -1 if it is not in the graph */
+    public int id(V v) {
+        Integer i = ids.get(v);
+        return (i == null) ? -1 : i;
+    }
+
+    public V vertex(int id) {
+        return (V) vertices[id];
+    }
+
+    public E edge(int id) {
+        return (E) edges[id];
+    }
+
+    public int degree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static processing.core.PConstants.QUADS;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/**
+ * Collects the arrows of a frame's edges into buckets of quantized color and
+ * thickness, and draws each bucket with one fill, as one path when drawing
+ * with Java2D.
+ *
+ * An arrow is the quad of the edge's line tapering into its head, as drawn
+ * by AbstractGraphVis.drawArrow, computed without trigonometry.
+ */
+public class EdgeBatch {
+
+    /** color channels are rounded to multiples of this */
+    static final int colorStep = 8;
+    /** thicknesses are rounded to multiples of this */
+    static final float thicknessStep = 0.25f;
+
+    public static class Bucket {
+        public final int color;
+        public final float thickness;
+        final long key;
+        /** color for Java2D, made once per bucket */
+        final Color awtColor;
+        /** direction of the arrow head's sides from the line */
+        final float cos, sin;
+        /** 8 coordinates per arrow */
+        float[] quads = new float[64];
+        int count;
+
+        Bucket(long key, int color, float thickness) {
+            this.key = key;
+            this.color = color;
+            this.thickness = thickness;
+            this.awtColor = new Color(color, true);
+            double angle = arrowAngle(thickness);
+            this.cos = (float)Math.cos(angle);
+            this.sin = (float)Math.sin(angle);
+        }
+    }
+
+    /** buckets by key, open addressed with linear probing; a power of two in size */
+    private Bucket[] buckets = new Bucket[64];
+    private int numBuckets;
+    private final List<Bucket> used = new ArrayList();
+    private Bucket last;
+    private final Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+
+    public static double arrowAngle(float thickness) {
+        return Math.PI/12.0 + thickness/200.0;
+    }
+
+    static int quantize(int c) {
+        int q = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int ch = (c >>> shift) & 0xff;
+            ch = Math.min(255, ((ch + colorStep/2) / colorStep) * colorStep);
+            q |= ch << shift;
+        }
+        return q;
+    }
+
+    public Bucket bucket(final int color, final float thickness) {
+        final int qc = quantize(color);
+        final int qt = Math.round(thickness / thicknessStep);
+        if ((last != null) && (last.color == qc) && (last.thickness == qt * thicknessStep))
+            return last;
+
+        final long key = (((long)qc) << 32) | (qt & 0xffffffffL);
+        Bucket b = find(key);
+        if (b == null) {
+            b = new Bucket(key, qc, qt * thicknessStep);
+            insert(b);
+        }
+        if (b.count == 0)
+            used.add(b);
+        return last = b;
+    }
+
+    private Bucket find(final long key) {
+        final int mask = buckets.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Bucket b = buckets[i];
+            if ((b == null) || (b.key == key))
+                return b;
+        }
+    }
+
+    private void insert(final Bucket b) {
+        if ((numBuckets + 1) * 2 > buckets.length) {
+            Bucket[] old = buckets;
+            buckets = new Bucket[old.length * 2];
+            for (Bucket o : old) {
+                if (o != null)
+                    place(o);
+            }
+        }
+        place(b);
+        numBuckets++;
+    }
+
+    private void place(final Bucket b) {
+        final int mask = buckets.length - 1;
+        int i = slot(b.key, mask);
+        while (buckets[i] != null)
+            i = (i + 1) & mask;
+        buckets[i] = b;
+    }
+
+    private static int slot(final long key, final int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return ((int)(h >>> 32)) & mask;
+    }
+
+    /**
+     * adds an arrow from (x1,y1) to the edge of a destination of the given
+     * radius around (x2,y2)
+     */
+    public void add(final int color, final float thickness, final float arrowHeadScale,
+            final float x1, final float y1, final float x2, final float y2, final float destinationRadius) {
+
+        final float headRadius = arrowHeadScale * (thickness*16f);
+        if (headRadius <= 0) return;
+
+        Bucket b = bucket(color, thickness);
+        if (b.quads.length < (b.count+1) * 8)
+            b.quads = Arrays.copyOf(b.quads, b.quads.length * 2);
+        if (arrow(b.quads, b.count * 8, x1, y1, x2, y2, destinationRadius, headRadius, b.cos, b.sin))
+            b.count++;
+    }
+
+    /**
+     * computes the quad of an arrow into q[o .. o+8): its tip, head sides
+     * rotated by the arrow angle (given by its cosine and sine) from the
+     * reversed direction, and its tail
+     * @return false if the arrow would be empty
+     */
+    public static boolean arrow(final float[] q, final int o,
+            final float x1, final float y1, final float x2, final float y2,
+            final float destinationRadius, final float headRadius, final float cos, final float sin) {
+
+        final float dx = x2 - x1;
+        final float dy = y2 - y1;
+        final float d = (float)Math.sqrt(dx*dx + dy*dy);
+        final float len = d - destinationRadius;
+        if ((len <= 0) || (d == 0)) return false;
+
+        final float ux = dx / d, uy = dy / d;
+        final float tx = x1 + ux * len;
+        final float ty = y1 + uy * len;
+
+        //reversed direction (-ux,-uy) rotated by -angle and +angle
+        final float lx = (-ux*cos - uy*sin) * headRadius;
+        final float ly = ( ux*sin - uy*cos) * headRadius;
+        final float rx = (-ux*cos + uy*sin) * headRadius;
+        final float ry = (-ux*sin - uy*cos) * headRadius;
+
+        q[o] = tx;        q[o+1] = ty;
+        q[o+2] = tx + rx; q[o+3] = ty + ry;
+        q[o+4] = x1;      q[o+5] = y1;
+        q[o+6] = tx + lx; q[o+7] = ty + ly;
+        return true;
+    }
+
+    /** draws and empties the buckets */
+    public void flush(final PGraphics g) {
+        final Graphics2D g2 = (g instanceof PGraphicsJava2D) ? ((PGraphicsJava2D)g).g2 : null;
+
+        g.noStroke();
+        for (Bucket b : used) {
+            final float[] q = b.quads;
+            final int n = b.count * 8;
+            if (g2 != null) {
+                path.reset();
+                for (int i = 0; i < n; i += 8) {
+                    path.moveTo(q[i], q[i+1]);
+                    path.lineTo(q[i+2], q[i+3]);
+                    path.lineTo(q[i+4], q[i+5]);
+                    path.lineTo(q[i+6], q[i+7]);
+                    path.closePath();
+                }
+                g2.setColor(b.awtColor);
+                g2.fill(path);
+            }
+            else {
+                g.fill(b.color);
+                g.beginShape(QUADS);
+                for (int i = 0; i < n; i += 2) {
+                    g.vertex(q[i], q[i+1]);
+                }
+                g.endShape();
+            }
+            b.count = 0;
+        }
+        used.clear();
+        last = null;
+        g.noFill();
+
+        //forget the buckets of colors no longer in use
+        if (numBuckets > 1024) {
+            buckets = new Bucket[64];
+            numBuckets = 0;
+        }
+    }
+}
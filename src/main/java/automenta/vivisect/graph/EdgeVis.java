@@ -71,11 +71,28 @@ public class EdgeVis<V, E> {
         g.stroke(color);
         g.strokeWeight(thickness);
 
-        float x1 = elem1.x*scale;
-        float y1 = elem1.y*scale;
-        float x2 = elem2.x*scale;
-        float y2 = elem2.y*scale;
+        float x1 = elem1.getCurrentX()*scale;
+        float y1 = elem1.getCurrentY()*scale;
+        float x2 = elem2.getCurrentX()*scale;
+        float y2 = elem2.getCurrentY()*scale;
 
-        c.drawArrow(g, x1, y1, x2, y2, elem2.radius/2f);
+        c.drawArrow(g, x1, y1, x2, y2, elem2.getRadius()/2f);
+    }
+
+    /** adds this edge's arrow to a batch, to be drawn with the others of its color and thickness */
+    public void draw(final AbstractGraphVis c, final EdgeBatch b) {
+        draw(c, b, color);
+    }
+
+    /** adds this edge's arrow to a batch, in another color */
+    public void draw(final AbstractGraphVis c, final EdgeBatch b, final int color) {
+        if (elem1 == null) {
+            updateVertices(c);
+        }
+
+        float scale = elem1.scale;
+
+        b.add(color, thickness, c.arrowHeadScale,
+                elem1.getCurrentX()*scale, elem1.getCurrentY()*scale, elem2.getCurrentX()*scale, elem2.getCurrentY()*scale, elem2.getRadius()/2f);
     }
 }
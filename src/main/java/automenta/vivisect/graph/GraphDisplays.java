@@ -19,8 +19,11 @@
  */
 package automenta.vivisect.graph;
 
+import automenta.vivisect.PhaseTimer;
 import com.google.common.collect.Lists;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -31,8 +34,35 @@ public class GraphDisplays<V,E> implements GraphDisplay<V,E> {
     
     final public List<GraphDisplay<V,E>> sequence;
 
+    /** timer phase names of each display, computed when it is added */
+    private final Map<GraphDisplay, String[]> phases = new ConcurrentHashMap();
+
     public GraphDisplays(GraphDisplay<V,E>... d) {
         sequence = new CopyOnWriteArrayList( Lists.newArrayList(d) );
+        for (GraphDisplay<V,E> x : d)
+            phases(x);
+    }
+
+    public void add(GraphDisplay<V,E> d) {
+        phases(d);
+        sequence.add(d);
+    }
+
+    public void clear() {
+        sequence.clear();
+        phases.clear();
+    }
+
+    /** names of the pre and post update phases of a display */
+    private String[] phases(GraphDisplay d) {
+        String[] p = phases.get(d);
+        if (p == null) {
+            //also for displays added to the sequence directly
+            String name = PhaseTimer.name(d);
+            p = new String[] { "preUpdate " + name, "postUpdate " + name };
+            phases.put(d, p);
+        }
+        return p;
     }
 
     @Override
@@ -40,7 +70,9 @@ public class GraphDisplays<V,E> implements GraphDisplay<V,E> {
         boolean allTrue = true;
         for (GraphDisplay<V, E> aSequence : sequence) {
             GraphDisplay s = aSequence;
+            long t = g.timer.start();
             allTrue &= s.preUpdate(g);
+            g.timer.record(phases(s)[0], t);
         }
         return allTrue;
     }
@@ -63,7 +95,9 @@ public class GraphDisplays<V,E> implements GraphDisplay<V,E> {
     public boolean postUpdate(final AbstractGraphVis<V, E> g) {
         boolean allTrue = true;
         for (GraphDisplay<V, E> aSequence : sequence) {
+            long t = g.timer.start();
             allTrue &= aSequence.postUpdate(g);
+            g.timer.record(phases(aSequence)[1], t);
         }
         return allTrue;
     }
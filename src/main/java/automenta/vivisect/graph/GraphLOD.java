@@ -0,0 +1,578 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import automenta.vivisect.swing.PCanvas;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DirectedMultigraph;
+
+/**
+ * Level of detail for graphs too large to draw: vertices are grouped into
+ * clusters, and each cluster is shown as a single supernode unless it is
+ * expanded.  Clusters in view are expanded nearest the view center first,
+ * as long as the number of drawn vertices and edges stays within the
+ * budget, so zooming in on a region expands the clusters there and zooming
+ * out collapses them again.
+ *
+ * Edges between vertices shown as the same pair of nodes are drawn as one
+ * SuperEdge.
+ */
+public class GraphLOD<V, E> {
+
+    /** assigns cluster keys to the vertices of a graph */
+    public interface Clusterer<V, E> {
+        /**
+         * @param g topology of the graph
+         * @param keys filled with the cluster key of each vertex id; null for a vertex which is never clustered
+         */
+        void cluster(CSRGraph<V, E> g, Object[] keys);
+    }
+
+    /** a collapsed cluster */
+    public static class Supernode {
+        public final Object key;
+        int size;
+
+        public Supernode(Object key) {
+            this.key = key;
+        }
+
+        /** number of vertices in the cluster */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Supernode) && ((Supernode) obj).key.equals(key);
+        }
+
+        @Override
+        public String toString() {
+            return key + " (" + size + ")";
+        }
+    }
+
+    /** edges aggregated between two nodes of which at least one is a supernode */
+    public static class SuperEdge {
+        public final Object source, target;
+        int count;
+
+        public SuperEdge(Object source, Object target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        /** number of edges aggregated */
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + target.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SuperEdge)) return false;
+            SuperEdge e = (SuperEdge) obj;
+            return e.source.equals(source) && e.target.equals(target);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(count);
+        }
+    }
+
+    /**
+     * clusters vertices into communities by label propagation: each vertex
+     * repeatedly takes the label carried by most of its neighbors (weighted),
+     * visiting vertices in a fixed order so the result is deterministic.  The
+     * key of a community is its highest degree vertex, which tends to remain
+     * the same as the graph changes.
+     */
+    public static class Communities<V, E> implements Clusterer<V, E> {
+        public int iterations = 8;
+
+        @Override
+        public void cluster(CSRGraph<V, E> g, Object[] keys) {
+            final int n = g.vertexCount();
+            int[] label = new int[n];
+            for (int i = 0; i < n; i++)
+                label[i] = i;
+
+            float[] votes = new float[n];
+            int[] touched = new int[n];
+            for (int it = 0; it < iterations; it++) {
+                boolean changed = false;
+                for (int i = 0; i < n; i++) {
+                    int numTouched = 0;
+                    for (int p = g.offsets[i]; p < g.offsets[i + 1]; p++) {
+                        int l = label[g.targets[p]];
+                        if (votes[l] == 0)
+                            touched[numTouched++] = l;
+                        votes[l] += g.weights[p];
+                    }
+                    if (numTouched == 0) continue;
+
+                    int best = label[i];
+                    float bestVotes = votes[best];
+                    for (int k = 0; k < numTouched; k++) {
+                        int l = touched[k];
+                        if ((votes[l] > bestVotes) || ((votes[l] == bestVotes) && (l < best))) {
+                            best = l;
+                            bestVotes = votes[l];
+                        }
+                    }
+                    for (int k = 0; k < numTouched; k++)
+                        votes[touched[k]] = 0;
+                    votes[label[i]] = 0;
+
+                    if (best != label[i]) {
+                        label[i] = best;
+                        changed = true;
+                    }
+                }
+                if (!changed) break;
+            }
+
+            //highest degree member of each label
+            int[] leader = new int[n];
+            Arrays.fill(leader, -1);
+            for (int i = 0; i < n; i++) {
+                int l = label[i];
+                if ((leader[l] == -1) || (g.degree(i) > g.degree(leader[l])))
+                    leader[l] = i;
+            }
+            for (int i = 0; i < n; i++)
+                keys[i] = g.vertex(leader[label[i]]);
+        }
+    }
+
+    /** key of the cluster collecting the vertices which would otherwise be alone in theirs */
+    public static final Object OTHER = "...";
+
+    private Clusterer<V, E> clusterer;
+
+    /** maximum number of vertices and edges to draw */
+    public int budget;
+
+    private final CSRGraph<V, E> topology = new CSRGraph();
+
+    //clustering of the last graph, recomputed when the version of its topology changes
+    private Graph<V, E> clustered;
+    private int clusteredVersion;
+    /** edges of the topology when last aggregated, which may be replaced without changing its version */
+    private Object[] aggregatedEdges = new Object[0];
+    private int[] clusterOf = new int[0];
+    private Supernode[] clusters = new Supernode[0];
+    private List<V>[] members = new List[0];
+    private int[] cost = new int[0];
+    private int numClusters;
+    /** cost of drawing every cluster collapsed */
+    private int baseCost;
+
+    /** result of aggregate, reused while the same clusters are expanded */
+    private Graph aggregated;
+
+    private final Map<Object, Supernode> supernodes = new HashMap();
+    private final Map<SuperEdge, SuperEdge> superEdges = new HashMap();
+    private boolean[] expanded = new boolean[0];
+    private boolean[] wasExpanded = new boolean[0];
+
+    public GraphLOD(Clusterer<V, E> clusterer, int budget) {
+        this.clusterer = clusterer;
+        this.budget = budget;
+    }
+
+    public void setClusterer(Clusterer<V, E> c) {
+        this.clusterer = c;
+        clustered = null;
+        aggregated = null;
+    }
+
+    public Clusterer<V, E> getClusterer() {
+        return clusterer;
+    }
+
+    /**
+     * @return the graph to display: g itself when it fits in the budget,
+     * otherwise a graph of its unclustered vertices, expanded clusters and supernodes
+     */
+    public Graph apply(final Graph<V, E> g, final AbstractGraphVis<V, E> vis) {
+        if (g.vertexSet().size() + g.edgeSet().size() <= budget) {
+            clustered = null;
+            aggregated = null;
+            return g;
+        }
+
+        //vertices may be replaced in a graph of constant size, so its topology is compared
+        topology.set(g);
+        if ((clustered == null) || (topology.getVersion() != clusteredVersion))
+            cluster(g);
+        else if (!sameEdges())
+            aggregated = null;
+
+        expand(vis);
+
+        if ((aggregated == null) || !Arrays.equals(expanded, wasExpanded)) {
+            aggregated = aggregate(g);
+            final int m = topology.edgeCount();
+            if (aggregatedEdges.length != m)
+                aggregatedEdges = new Object[m];
+            for (int e = 0; e < m; e++)
+                aggregatedEdges[e] = topology.edge(e);
+        }
+        return aggregated;
+    }
+
+    /**
+     * when a vertex first appears, the vertex whose position it should start
+     * from: the supernode of an expanded member, or a member of a collapsed
+     * cluster
+     */
+    public Object origin(Object v) {
+        if (clustered == null) return null;
+        if (v instanceof Supernode) {
+            Supernode s = (Supernode) v;
+            for (int c = 0; c < numClusters; c++) {
+                if (clusters[c] == s)
+                    return members[c].isEmpty() ? null : members[c].get(0);
+            }
+            return null;
+        }
+        int id = topology.id((V) v);
+        if ((id == -1) || (clusterOf[id] == -1)) return null;
+        return clusters[clusterOf[id]];
+    }
+
+    /** whether the topology has the same edge objects as when last aggregated */
+    private boolean sameEdges() {
+        final int m = topology.edgeCount();
+        boolean same = (aggregatedEdges.length == m);
+        for (int e = 0; (e < m) && same; e++)
+            same = (aggregatedEdges[e] == topology.edge(e));
+        return same;
+    }
+
+    private void cluster(final Graph<V, E> g) {
+        clustered = g;
+        clusteredVersion = topology.getVersion();
+        aggregated = null;
+
+        final int n = topology.vertexCount();
+
+        Object[] keys = new Object[n];
+        clusterer.cluster(topology, keys);
+
+        //count cluster sizes to merge the singletons into OTHER
+        Map<Object, Integer> sizes = new HashMap();
+        for (int i = 0; i < n; i++) {
+            if (keys[i] != null)
+                sizes.merge(keys[i], 1, Integer::sum);
+        }
+
+        //clusters found, before merging any which do not fit into OTHER
+        Map<Object, Integer> index = new HashMap();
+        final List<Object> found = new ArrayList();
+        final List<Integer> foundSize = new ArrayList();
+        int[] initial = new int[n];
+        for (int i = 0; i < n; i++) {
+            Object k = keys[i];
+            if (k == null) {
+                initial[i] = -1;
+                continue;
+            }
+            if (sizes.get(k) == 1)
+                k = OTHER;
+
+            Integer c = index.get(k);
+            if (c == null) {
+                c = found.size();
+                index.put(k, c);
+                found.add(k);
+                foundSize.add(0);
+            }
+            initial[i] = c;
+            foundSize.set(c, foundSize.get(c) + 1);
+        }
+
+        //smallest first, to be merged into OTHER while the collapsed graph exceeds the budget
+        List<Integer> bySize = new ArrayList();
+        for (int c = 0; c < found.size(); c++) {
+            if (found.get(c) != OTHER)
+                bySize.add(c);
+        }
+        //stable, so equal sizes keep the order they were found in
+        bySize.sort((a, b) -> Integer.compare(foundSize.get(a), foundSize.get(b)));
+
+        if (clusterOf.length < n)
+            clusterOf = new int[n];
+        List<Object> clusterKeys = assign(initial, found, bySize, 0);
+        measure();
+        if ((baseCost > budget) && !bySize.isEmpty()) {
+            //fewest merges which fit, as merging never increases the cost
+            int lo = 1, hi = bySize.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                assign(initial, found, bySize, mid);
+                measure();
+                if (baseCost <= budget)
+                    hi = mid;
+                else
+                    lo = mid + 1;
+            }
+            clusterKeys = assign(initial, found, bySize, lo);
+            measure();
+        }
+
+        List<Supernode> cl = new ArrayList();
+        for (Object k : clusterKeys) {
+            Supernode s = supernodes.get(k);
+            if (s == null) {
+                s = new Supernode(k);
+                supernodes.put(k, s);
+            }
+            cl.add(s);
+        }
+        supernodes.values().retainAll(cl);
+
+        clusters = cl.toArray(new Supernode[numClusters]);
+        members = new List[numClusters];
+        for (int c = 0; c < numClusters; c++) {
+            members[c] = new ArrayList();
+        }
+        for (int i = 0; i < n; i++) {
+            int c = clusterOf[i];
+            if (c != -1)
+                members[c].add(topology.vertex(i));
+        }
+        for (int c = 0; c < numClusters; c++) {
+            clusters[c].size = members[c].size();
+        }
+
+        wasExpanded = new boolean[numClusters];
+        expanded = new boolean[numClusters];
+    }
+
+    /**
+     * sets clusterOf and numClusters from the clusters found, with the first
+     * merged of them (by size) merged into OTHER
+     * @return the key of each cluster
+     */
+    private List<Object> assign(int[] initial, List<Object> found, List<Integer> bySize, int merged) {
+        boolean[] intoOther = new boolean[found.size()];
+        for (int i = 0; i < merged; i++)
+            intoOther[bySize.get(i)] = true;
+
+        List<Object> clusterKeys = new ArrayList();
+        int[] remap = new int[found.size()];
+        int other = -1;
+        for (int c = 0; c < found.size(); c++) {
+            if (intoOther[c] || (found.get(c) == OTHER)) {
+                if (other == -1) {
+                    other = clusterKeys.size();
+                    clusterKeys.add(OTHER);
+                }
+                remap[c] = other;
+            }
+            else {
+                remap[c] = clusterKeys.size();
+                clusterKeys.add(found.get(c));
+            }
+        }
+        numClusters = clusterKeys.size();
+
+        for (int i = 0; i < initial.length; i++)
+            clusterOf[i] = (initial[i] == -1) ? -1 : remap[initial[i]];
+        return clusterKeys;
+    }
+
+    /**
+     * computes baseCost, the number of vertices and edges drawn with every
+     * cluster collapsed, and the cost of expanding each cluster while the
+     * others are collapsed: its members and their edges, of which those to
+     * another cluster are aggregated per member, instead of the supernode
+     * and its SuperEdges
+     */
+    private void measure() {
+        final int n = topology.vertexCount();
+        final long nodes = n + numClusters;
+
+        cost = new int[numClusters];
+        int unclustered = 0;
+        for (int i = 0; i < n; i++) {
+            int c = clusterOf[i];
+            if (c == -1)
+                unclustered++;
+            else
+                cost[c]++;
+        }
+        for (int c = 0; c < numClusters; c++)
+            cost[c]--;
+
+        Set<Long> superEdges = new HashSet(), memberEdges = new HashSet();
+        int rawEdges = 0;
+        for (int e = 0; e < topology.edgeCount(); e++) {
+            int s = topology.edgeSource[e], t = topology.edgeTarget[e];
+            int cs = clusterOf[s], ct = clusterOf[t];
+            if ((cs == -1) && (ct == -1)) {
+                rawEdges++;
+                continue;
+            }
+            if (cs == ct) {
+                //inside a cluster, only drawn when it is expanded
+                cost[cs]++;
+                continue;
+            }
+
+            long a = (cs == -1) ? s : n + cs, b = (ct == -1) ? t : n + ct;
+            if (superEdges.add(a * nodes + b)) {
+                if (cs != -1) cost[cs]--;
+                if (ct != -1) cost[ct]--;
+            }
+            if ((cs != -1) && ((ct == -1) || memberEdges.add(s * nodes + b)))
+                cost[cs]++;
+            if ((ct != -1) && ((cs == -1) || memberEdges.add(a * nodes + t)))
+                cost[ct]++;
+        }
+
+        baseCost = unclustered + rawEdges + superEdges.size() + numClusters;
+    }
+
+    private void expand(final AbstractGraphVis<V, E> vis) {
+        boolean[] prev = wasExpanded;
+        wasExpanded = expanded;
+        expanded = prev;
+        Arrays.fill(expanded, false);
+
+        //view in world coordinates
+        PCanvas canvas = vis.getCanvas();
+        float cx = 0, cy = 0, radius = Float.POSITIVE_INFINITY;
+        if ((canvas != null) && (canvas.getZoom() > 0)) {
+            float zoom = canvas.getZoom();
+            cx = -canvas.getPanX() / zoom;
+            cy = -canvas.getPanY() / zoom;
+            radius = Math.max(canvas.width, canvas.height) / 2f / zoom;
+        }
+
+        //distance of each cluster from the view center, from its supernode or its members' last positions
+        final float[] dist = new float[numClusters];
+        Integer[] order = new Integer[numClusters];
+        int candidates = 0;
+        for (int c = 0; c < numClusters; c++) {
+            VertexVis s = vis.getVertexDisplay((V) clusters[c]);
+            float x, y, r = 0;
+            if (s != null) {
+                x = s.getCurrentX() * s.scale;
+                y = s.getCurrentY() * s.scale;
+                //partly visible supernodes count as in view
+                r = s.getRadius() * s.scale;
+            }
+            else {
+                x = y = 0;
+                int shown = 0;
+                for (V v : members[c]) {
+                    VertexVis m = vis.getVertexDisplay(v);
+                    if (m == null) continue;
+                    x += m.getCurrentX() * m.scale;
+                    y += m.getCurrentY() * m.scale;
+                    shown++;
+                }
+                if (shown == 0) continue;
+                x /= shown;
+                y /= shown;
+            }
+
+            float dx = x - cx, dy = y - cy;
+            float d = (float) Math.sqrt(dx * dx + dy * dy);
+            if (d > radius + r) continue;
+
+            //prefer keeping expanded clusters expanded
+            dist[c] = wasExpanded[c] ? d * 0.5f : d;
+            order[candidates++] = c;
+        }
+
+        Arrays.sort(order, 0, candidates, (a, b) -> Float.compare(dist[a], dist[b]));
+
+        int used = baseCost;
+        for (int i = 0; i < candidates; i++) {
+            int c = order[i];
+            if (used + cost[c] <= budget) {
+                expanded[c] = true;
+                used += cost[c];
+            }
+        }
+    }
+
+    private Graph aggregate(final Graph<V, E> g) {
+        DirectedMultigraph out = new DirectedMultigraph(Object.class);
+        final int n = topology.vertexCount();
+        Object[] node = new Object[n];
+
+        for (int i = 0; i < n; i++) {
+            int c = clusterOf[i];
+            Object v = ((c == -1) || expanded[c]) ? topology.vertex(i) : clusters[c];
+            node[i] = v;
+            out.addVertex(v);
+        }
+
+        Map<SuperEdge, SuperEdge> used = new HashMap();
+
+        for (int e = 0; e < topology.edgeCount(); e++) {
+            int s = topology.edgeSource[e], t = topology.edgeTarget[e];
+            Object a = node[s], b = node[t];
+            if ((a == topology.vertex(s)) && (b == topology.vertex(t))) {
+                out.addEdge(a, b, topology.edge(e));
+                continue;
+            }
+            if (a == b) {
+                //inside a collapsed cluster
+                continue;
+            }
+
+            SuperEdge k = new SuperEdge(a, b);
+            SuperEdge x = used.get(k);
+            if (x == null) {
+                x = superEdges.get(k);
+                if (x == null) {
+                    x = k;
+                    superEdges.put(k, k);
+                }
+                x.count = 0;
+                used.put(x, x);
+                out.addEdge(a, b, x);
+            }
+            x.count++;
+        }
+        superEdges.keySet().retainAll(used.keySet());
+
+        return out;
+    }
+}
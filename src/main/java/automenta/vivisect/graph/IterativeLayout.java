@@ -0,0 +1,49 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+/**
+ * A layout computed by repeated iterations over arrays of its own, which
+ * can therefore run apart from the render thread, in a LayoutWorker.
+ *
+ * Vertices are numbered as in a CSRGraph, and positions are vertex display
+ * targets (VertexVis.getX/getY).
+ */
+public interface IterativeLayout {
+
+    /**
+     * starts laying out n vertices from the given positions, copying what it
+     * needs of the arrays
+     * @param radius size of each vertex display
+     * @param offsets neighbours of vertex i are targets[offsets[i] .. offsets[i+1])
+     */
+    void start(int n, float[] x, float[] y, float[] radius, int[] offsets, int[] targets);
+
+    /**
+     * continues after the topology changed, from the given positions, keeping
+     * the progress made (like a temperature) as far as the change allows
+     * @param added number of vertices which were not in the previous topology
+     */
+    void update(int n, float[] x, float[] y, float[] radius, int[] offsets, int[] targets, int added);
+
+    /**
+     * runs one iteration
+     * @return the largest distance a vertex moved
+     */
+    double iterate();
+
+    /** copies the positions of the n vertices started with into x and y */
+    void getPositions(float[] x, float[] y);
+}
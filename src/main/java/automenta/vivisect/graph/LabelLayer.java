@@ -0,0 +1,241 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+
+/**
+ * Draws the labels of the visible vertices of a frame:
+ * <ul>
+ * <li>labels smaller than minSize pixels on screen are not drawn</li>
+ * <li>labels are placed in order of vertex size, and a label overlapping
+ *     one already placed is not drawn</li>
+ * <li>with Java2D, labels are drawn from pre-rasterized sprites, cached by
+ *     text, color and pixel size; sizes are rounded to powers of &radic;2
+ *     and the sprites scaled to fit, so zooming reuses them</li>
+ * </ul>
+ */
+public class LabelLayer {
+
+    /** on-screen text size, in pixels, below which labels are hidden */
+    public float minSize = 5f;
+
+    /** labels larger than this many pixels are drawn as text, not sprites */
+    public int maxSpriteSize = 40;
+
+    /** whether overlapping labels of smaller vertices are hidden */
+    public boolean suppressOverlap = true;
+
+    /** size of the screen cells used to detect overlapping labels */
+    static final int cellSize = 6;
+
+    static final class Sprite {
+        final BufferedImage image;
+        final int ascent;
+
+        Sprite(BufferedImage image, int ascent) {
+            this.image = image;
+            this.ascent = ascent;
+        }
+    }
+
+    static final class Key {
+        final String label;
+        final int color, size;
+        private final int hash;
+
+        Key(String label, int color, int size) {
+            this.label = label;
+            this.color = color;
+            this.size = size;
+            this.hash = 31 * (31 * label.hashCode() + color) + size;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key k = (Key) obj;
+            return (hash == k.hash) && (size == k.size) && (color == k.color) && label.equals(k.label);
+        }
+    }
+
+    private static final Font[] fonts = new Font[256];
+
+    static Font font(int size) {
+        Font f = fonts[size];
+        if (f == null)
+            fonts[size] = f = new Font(Font.SANS_SERIF, Font.PLAIN, size);
+        return f;
+    }
+
+    /** sprite pixel size used for a text size: the nearest power of sqrt(2) */
+    static int spriteSize(float px) {
+        int k = Math.round(2f * (float) (Math.log(Math.max(1f, px)) / Math.log(2)));
+        return Math.max(1, (int) Math.round(Math.pow(2, k / 2.0)));
+    }
+
+    private static final LoadingCache<Key, Sprite> sprites = CacheBuilder.newBuilder()
+            .maximumSize(4096)
+            .build(new CacheLoader<Key, Sprite>() {
+                @Override public Sprite load(Key k) {
+                    return rasterize(k);
+                }
+            });
+
+    static Sprite rasterize(Key k) {
+        Font f = font(k.size);
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D pg = probe.createGraphics();
+        FontMetrics m = pg.getFontMetrics(f);
+        pg.dispose();
+
+        int w = Math.max(1, m.stringWidth(k.label));
+        int h = Math.max(1, m.getAscent() + m.getDescent());
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(f);
+        g.setColor(new java.awt.Color(k.color, true));
+        g.drawString(k.label, 0, m.getAscent());
+        g.dispose();
+        return new Sprite(img, m.getAscent());
+    }
+
+    private long[] order = new long[0];
+    private long[] occupied = new long[0];
+    private int cols, rows;
+    private final AffineTransform transform = new AffineTransform();
+
+    /**
+     * draws the labels of vertices
+     * @param ids topology ids of the vertices, or null for all n
+     * @param zoom screen pixels per world unit
+     * @param left screen x of world x=0, when suppressing overlap
+     * @param top screen y of world y=0, when suppressing overlap
+     * @param width screen width, or 0 to not suppress overlap
+     * @param height screen height
+     */
+    public void draw(final PGraphics g, final VertexVis[] vis, final int[] ids, final int n,
+            final float zoom, final float left, final float top, final int width, final int height) {
+
+        //candidates in decreasing order of vertex size
+        if (order.length < n)
+            order = new long[n];
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            int i = (ids == null) ? k : ids[k];
+            VertexVis v = vis[i];
+            if ((v.label == null) || (v.textScale <= 0)) continue;
+            float r = v.getRadius() * v.scale;
+            if (r / 2f * v.textScale * zoom < minSize) continue;
+            order[count++] = (((long) Float.floatToIntBits(r)) << 32) | i;
+        }
+        if (count == 0) return;
+        Arrays.sort(order, 0, count);
+
+        final boolean suppress = suppressOverlap && (width > 0);
+        if (suppress) {
+            cols = width / cellSize + 1;
+            rows = height / cellSize + 1;
+            int words = (cols * rows + 63) >>> 6;
+            if (occupied.length < words)
+                occupied = new long[words];
+            else
+                Arrays.fill(occupied, 0, words, 0);
+        }
+
+        final Graphics2D g2 = (g instanceof PGraphicsJava2D) ? ((PGraphicsJava2D) g).g2 : null;
+
+        for (int k = count - 1; k >= 0; k--) {
+            final VertexVis v = vis[(int) order[k]];
+            final float r = v.getRadius() * v.scale;
+            final float textSize = r / 2f * v.textScale;
+            final float px = textSize * zoom;
+            final float x = v.getCurrentX() * v.scale, y = v.getCurrentY() * v.scale;
+
+            Sprite s = null;
+            float w, ascent, h, spriteScale = 1f;
+            if ((g2 != null) && (px <= maxSpriteSize)) {
+                int size = spriteSize(px);
+                s = sprites.getUnchecked(new Key(v.label, v.textColor, size));
+                spriteScale = px / size;
+                w = s.image.getWidth() * spriteScale;
+                h = s.image.getHeight() * spriteScale;
+                ascent = s.ascent * spriteScale;
+            }
+            else {
+                //approximate text box
+                w = v.label.length() * px * 0.6f;
+                h = px * 1.25f;
+                ascent = px;
+            }
+
+            if (suppress) {
+                float sx = left + x * zoom, sy = top + y * zoom - ascent;
+                if (!place(sx, sy, sx + w, sy + h))
+                    continue;
+            }
+
+            if (s != null) {
+                float invZoom = 1f / zoom;
+                transform.setToTranslation(x, y - ascent * invZoom);
+                transform.scale(invZoom * spriteScale, invZoom * spriteScale);
+                g2.drawImage(s.image, transform, null);
+            }
+            else {
+                v.renderLabel(g);
+            }
+        }
+    }
+
+    /** marks the cells of a screen rectangle as occupied, unless one already is */
+    private boolean place(float x0, float y0, float x1, float y1) {
+        int c0 = Math.max(0, (int) (x0 / cellSize)), c1 = Math.min(cols - 1, (int) (x1 / cellSize));
+        int r0 = Math.max(0, (int) (y0 / cellSize)), r1 = Math.min(rows - 1, (int) (y1 / cellSize));
+        if ((c0 > c1) || (r0 > r1))
+            return true; //off screen
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int b = r * cols + c;
+                if ((occupied[b >>> 6] & (1L << b)) != 0)
+                    return false;
+            }
+        }
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int b = r * cols + c;
+                occupied[b >>> 6] |= (1L << b);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs an IterativeLayout continuously on a thread of its own, so the frame
+ * rate does not depend on the layout and the layout does not depend on the
+ * frame rate.
+ *
+ * Each time the topology changes, the render thread copies it with the
+ * current targets of the vertex displays, and the worker continues the
+ * layout from them, keeping its temperature.  After each iteration the worker publishes the positions, and
+ * the render thread takes the latest as the vertex targets in postUpdate.
+ * Position buffers are exchanged through atomic references, never locked:
+ * the worker fills one while the render thread reads another, and a third
+ * spare lets the worker continue when the render thread has not yet taken
+ * the last.
+ *
+ * The worker iterates only for its share of a processor, and stops once
+ * the layout settles until the topology changes again.
+ */
+public class LayoutWorker<V, E> implements GraphDisplay<V, E> {
+
+    /** copy of a topology, and the positions to start laying it out from */
+    static final class Input {
+        int version, n;
+        Object[] vertices;
+        float[] x, y, radius;
+        int[] offsets, targets;
+    }
+
+    /** positions of the vertices of an Input */
+    static final class Positions {
+        int version, n;
+        Object[] vertices;
+        float[] x = new float[0], y = new float[0];
+    }
+
+    private final IterativeLayout layout;
+
+    /** fraction of a processor's time the worker may spend iterating */
+    private volatile float cpuShare = 0.5f;
+
+    /** largest distance moved in an iteration, in world units, for the layout to be settled */
+    private volatile double restDistance = 0.1;
+
+    private final AtomicReference<Input> pending = new AtomicReference();
+    private final AtomicReference<Positions> published = new AtomicReference();
+    private final AtomicReference<Positions> spare = new AtomicReference();
+
+    /** for redraw requests once positions are published */
+    private volatile AbstractGraphVis<V, E> graph;
+
+    /** topology version last sent to the worker; used by the render thread only */
+    private int sentVersion = -1;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public LayoutWorker(IterativeLayout layout) {
+        this.layout = layout;
+    }
+
+    public IterativeLayout getLayout() {
+        return layout;
+    }
+
+    public float getCpuShare() {
+        return cpuShare;
+    }
+
+    /** @param share fraction of a processor's time, above 0 and up to 1 */
+    public void setCpuShare(float share) {
+        this.cpuShare = Math.max(0.01f, Math.min(1f, share));
+    }
+
+    public void setRestDistance(double d) {
+        this.restDistance = d;
+    }
+
+    /** the worker lays out the graph it has, so it never asks for the graph to be updated */
+    @Override
+    public boolean preUpdate(AbstractGraphVis<V, E> g) {
+        return false;
+    }
+
+    @Override
+    public void vertex(AbstractGraphVis<V, E> g, VertexVis<V, E> v) {
+    }
+
+    @Override
+    public void edge(AbstractGraphVis<V, E> g, EdgeVis<V, E> e) {
+    }
+
+    /** sends the topology to the worker if it changed, and applies the latest positions */
+    @Override
+    public boolean postUpdate(AbstractGraphVis<V, E> g) {
+        graph = g;
+
+        final CSRGraph<V, E> topology = g.getTopology();
+        if (topology.getVersion() != sentVersion) {
+            sentVersion = topology.getVersion();
+            submit(g, topology);
+        }
+
+        Positions p = published.getAndSet(null);
+        if (p != null) {
+            apply(g, topology, p);
+            spare.set(p);
+        }
+        return true;
+    }
+
+    private void submit(final AbstractGraphVis<V, E> g, final CSRGraph<V, E> topology) {
+        final int n = topology.vertexCount();
+        Input in = new Input();
+        in.version = topology.getVersion();
+        in.n = n;
+        in.vertices = new Object[n];
+        in.x = new float[n];
+        in.y = new float[n];
+        in.radius = new float[n];
+        for (int i = 0; i < n; i++) {
+            VertexVis<V, E> v = g.getVertexDisplayAt(i);
+            in.vertices[i] = v.vertex;
+            in.x[i] = v.getX();
+            in.y[i] = v.getY();
+            in.radius[i] = v.getRadius();
+        }
+        in.offsets = Arrays.copyOf(topology.offsets, n + 1);
+        in.targets = Arrays.copyOf(topology.targets, topology.offsets[n]);
+
+        pending.set(in);
+        start();
+    }
+
+    /** sets the vertex targets from positions, matching vertices by object if the topology has been rebuilt since */
+    private void apply(final AbstractGraphVis<V, E> g, final CSRGraph<V, E> topology, final Positions p) {
+        final boolean current = (p.version == topology.getVersion());
+        for (int i = 0; i < p.n; i++) {
+            VertexVis<V, E> v = current ? g.getVertexDisplayAt(i) : g.getVertexDisplay((V) p.vertices[i]);
+            if (v != null)
+                v.setPosition(p.x[i], p.y[i]);
+        }
+    }
+
+    private synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::run, "Graph Layout");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /** ends the worker thread; it is started again by the next postUpdate with a new topology */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread = null;
+        }
+        sentVersion = -1;
+    }
+
+    /** number of vertices of next which are not in prev; ids of remaining vertices are kept by CSRGraph */
+    private static int added(final Input prev, final Input next) {
+        int added = Math.max(0, next.n - prev.n);
+        int common = Math.min(prev.n, next.n);
+        for (int i = 0; i < common; i++) {
+            if (!next.vertices[i].equals(prev.vertices[i]))
+                added++;
+        }
+        return added;
+    }
+
+    private void run() {
+        final Thread self = Thread.currentThread();
+        Input current = null;
+        Positions back = null;
+        boolean settled = true;
+
+        while (running && (thread == self)) {
+            long start = System.nanoTime();
+            boolean iterated = false;
+
+            //a worker stopped and started again may overlap the one it replaces
+            synchronized (layout) {
+                Input in = pending.getAndSet(null);
+                if (in != null) {
+                    if (current == null)
+                        layout.start(in.n, in.x, in.y, in.radius, in.offsets, in.targets);
+                    else
+                        layout.update(in.n, in.x, in.y, in.radius, in.offsets, in.targets, added(current, in));
+                    current = in;
+                    settled = false;
+                }
+
+                if ((current != null) && !settled) {
+                    try {
+                        settled = layout.iterate() < restDistance;
+                    }
+                    catch (RuntimeException e) {
+                        Logger.getLogger(LayoutWorker.class.getName()).log(Level.SEVERE, null, e);
+                        current = null;
+                        continue;
+                    }
+
+                    //publish, reusing whichever buffer the render thread has not taken
+                    if (back == null)
+                        back = spare.getAndSet(null);
+                    if (back == null)
+                        back = new Positions();
+                    if (back.x.length < current.n) {
+                        back.x = new float[current.n];
+                        back.y = new float[current.n];
+                    }
+                    layout.getPositions(back.x, back.y);
+                    back.n = current.n;
+                    back.version = current.version;
+                    back.vertices = current.vertices;
+                    back = published.getAndSet(back);
+                    iterated = true;
+                }
+            }
+
+            if (iterated) {
+                AbstractGraphVis<V, E> g = graph;
+                if (g != null)
+                    g.requestRedraw();
+            }
+
+            if ((current == null) || settled) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            //rest in proportion to the time spent, for the configured share
+            long spent = System.nanoTime() - start;
+            float share = cpuShare;
+            if (share < 1f)
+                LockSupport.parkNanos(this, (long) (spent * (1f - share) / share));
+        }
+    }
+}
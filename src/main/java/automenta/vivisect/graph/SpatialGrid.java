@@ -0,0 +1,177 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over a set of 2D points, rebuilt in linear time by counting
+ * sort, for finding the points within a rectangle in time proportional to
+ * the cells it covers and the points found.
+ *
+ * Points are identified by their index in the arrays given to build().
+ */
+public class SpatialGrid {
+
+    /** average number of points per cell */
+    static final int pointsPerCell = 4;
+    static final int maxCellsPerSide = 256;
+
+    private float minX, minY, invCell;
+    private int cols, rows;
+
+    /** points of cell c are items[cellStart[c] .. cellStart[c+1]) */
+    private int[] cellStart = new int[2];
+    private int[] items = new int[0];
+    private int[] cellOf = new int[0];
+    private float[] xs = new float[0], ys = new float[0];
+    private int size;
+
+    /** results of the last query */
+    private int[] found = new int[16];
+
+    /** indexes points 0..n-1 */
+    public SpatialGrid build(final float[] x, final float[] y, final int n) {
+        this.xs = x;
+        this.ys = y;
+        this.size = n;
+
+        if (n == 0) {
+            cols = rows = 1;
+            cellStart[0] = cellStart[1] = 0;
+            return this;
+        }
+
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            float px = x[i], py = y[i];
+            if (px < x0) x0 = px;
+            if (px > x1) x1 = px;
+            if (py < y0) y0 = py;
+            if (py > y1) y1 = py;
+        }
+
+        int side = (int) Math.ceil(Math.sqrt((double) n / pointsPerCell));
+        side = Math.max(1, Math.min(maxCellsPerSide, side));
+        float extent = Math.max(Math.max(x1 - x0, y1 - y0), 1e-6f);
+        float cell = extent / side;
+        this.minX = x0;
+        this.minY = y0;
+        this.invCell = 1f / cell;
+        this.cols = Math.min(side, (int) ((x1 - x0) * invCell) + 1);
+        this.rows = Math.min(side, (int) ((y1 - y0) * invCell) + 1);
+
+        int cells = cols * rows;
+        if (cellStart.length < cells + 1)
+            cellStart = new int[cells + 1];
+        else
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+        if (cellOf.length < n) {
+            cellOf = new int[n];
+            items = new int[n];
+        }
+
+        for (int i = 0; i < n; i++) {
+            int c = col(x[i]) + row(y[i]) * cols;
+            cellOf[i] = c;
+            cellStart[c + 1]++;
+        }
+        for (int c = 0; c < cells; c++)
+            cellStart[c + 1] += cellStart[c];
+
+        //fill each cell from its end, so cellStart[c] ends at the cell's start again
+        for (int c = 0; c < cells; c++)
+            cellStart[c] = cellStart[c + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            items[--cellStart[cellOf[i]]] = i;
+        }
+
+        return this;
+    }
+
+    private int col(float x) {
+        int c = (int) ((x - minX) * invCell);
+        return (c < 0) ? 0 : ((c >= cols) ? cols - 1 : c);
+    }
+
+    private int row(float y) {
+        int r = (int) ((y - minY) * invCell);
+        return (r < 0) ? 0 : ((r >= rows) ? rows - 1 : r);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * finds the points within a rectangle; the result is in getFound(),
+     * in ascending order
+     * @return number of points found
+     */
+    public int query(final float x0, final float y0, final float x1, final float y1) {
+        int count = 0;
+        if ((size == 0) || (x1 < x0) || (y1 < y0))
+            return 0;
+
+        int c0 = col(x0), c1 = col(x1), r0 = row(y0), r1 = row(y1);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = c + r * cols;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = items[k];
+                    float px = xs[i], py = ys[i];
+                    if ((px >= x0) && (px <= x1) && (py >= y0) && (py <= y1)) {
+                        if (count == found.length)
+                            found = Arrays.copyOf(found, count * 2);
+                        found[count++] = i;
+                    }
+                }
+            }
+        }
+        Arrays.sort(found, 0, count);
+        return count;
+    }
+
+    /** points found by the last query */
+    public int[] getFound() {
+        return found;
+    }
+
+    /**
+     * @return the point nearest to (x, y) within maxDist, or -1 if there is none
+     */
+    public int nearest(final float x, final float y, final float maxDist) {
+        if (size == 0) return -1;
+        int c0 = col(x - maxDist), c1 = col(x + maxDist), r0 = row(y - maxDist), r1 = row(y + maxDist);
+        int best = -1;
+        float bestD = maxDist * maxDist;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = c + r * cols;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = items[k];
+                    float dx = xs[i] - x, dy = ys[i] - y;
+                    float d = dx * dx + dy * dy;
+                    if (d <= bestD) {
+                        bestD = d;
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.util.Arrays;
+
+/**
+ * Animated state of the vertices of a graph display, as parallel arrays
+ * indexed by slot.  Each VertexVis is a view of one slot; slots of removed
+ * vertices are reused.
+ *
+ * The arrays are replaced when the store grows, so they should be read
+ * from the fields again after allocate().
+ */
+public class VertexStore {
+
+    /** current position */
+    public float[] x, y;
+    /** target position */
+    public float[] tx, ty;
+    public float[] radius;
+    /** fraction of the distance to the target moved per frame */
+    public float[] speed;
+    public int[] color;
+
+    /** slots ever allocated; all slots in use are below this */
+    private int size;
+    private int[] free = new int[16];
+    private int numFree;
+
+    public VertexStore() {
+        this(64);
+    }
+
+    public VertexStore(int capacity) {
+        x = new float[capacity];
+        y = new float[capacity];
+        tx = new float[capacity];
+        ty = new float[capacity];
+        radius = new float[capacity];
+        speed = new float[capacity];
+        color = new int[capacity];
+    }
+
+    /** @return a slot whose values are all zero */
+    public int allocate() {
+        if (numFree > 0)
+            return free[--numFree];
+
+        if (size == x.length) {
+            int capacity = Math.max(16, size * 2);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            tx = Arrays.copyOf(tx, capacity);
+            ty = Arrays.copyOf(ty, capacity);
+            radius = Arrays.copyOf(radius, capacity);
+            speed = Arrays.copyOf(speed, capacity);
+            color = Arrays.copyOf(color, capacity);
+        }
+        return size++;
+    }
+
+    public void release(final int slot) {
+        x[slot] = y[slot] = tx[slot] = ty[slot] = 0;
+        radius[slot] = speed[slot] = 0;
+        color[slot] = 0;
+        if (numFree == free.length)
+            free = Arrays.copyOf(free, numFree * 2);
+        free[numFree++] = slot;
+    }
+
+    /** number of slots in use */
+    public int count() {
+        return size - numFree;
+    }
+
+    /**
+     * moves every vertex toward its target by its speed
+     * @return number of vertices still farther than threshold (in x plus y) from their targets
+     */
+    public int interpolate(final float threshold) {
+        final float[] x = this.x, y = this.y, tx = this.tx, ty = this.ty, speed = this.speed;
+        final int n = size;
+        int moving = 0;
+        //released slots have zero speed and position, so need not be skipped
+        for (int i = 0; i < n; i++) {
+            final float s = speed[i];
+            final float dx = (tx[i] - x[i]) * (1f - s);
+            final float dy = (ty[i] - y[i]) * (1f - s);
+            x[i] = tx[i] - dx;
+            y[i] = ty[i] - dy;
+            if (Math.abs(dx) + Math.abs(dy) > threshold) moving++;
+        }
+        return moving;
+    }
+}
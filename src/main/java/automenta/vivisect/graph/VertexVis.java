@@ -27,63 +27,81 @@ import com.google.common.collect.ClassToInstanceMap;
 import com.google.common.collect.MutableClassToInstanceMap;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import processing.core.PGraphics;
 
 /**
+ * Display of a graph vertex.  Its position, target, radius, speed and color
+ * are kept in a slot of a VertexStore shared by the vertices of a display;
+ * instances are reused for other vertices once removed.
  *
  * @author me
  */
 public class VertexVis<V, E> {
-    public final V vertex;
-    public float x;
-    public float y;
-    public float tx;
-    public float ty;
-    public float radius;
+    public V vertex;
+    final VertexStore store;
+    /** index of this vertex's state in the store, or -1 when released */
+    int slot = -1;
+    /** topology id of this vertex as of the last graph update */
+    int id = -1;
     public float stroke;
     public float scale;
     public String label;
-    public int color;
     public int textColor;
     public float textScale;
     public int strokeColor;
-    public Set<E> edges;
     public Shape shape;
-    public float speed;
     public ClassToInstanceMap<Object> props;
     public List<Vis> children = null;
     private final PCanvas canvas;
 
     public VertexVis(PCanvas canvas, V o) {
+        this(canvas, new VertexStore(1), o);
+    }
+
+    public VertexVis(PCanvas canvas, VertexStore store, V o) {
         this.canvas = canvas;
+        this.store = store;
+        reset(o);
+    }
+
+    /** binds to a vertex, in the initial state of a new display */
+    void reset(V o) {
         this.vertex = o;
-        x = (float) Math.random();
-        y = (float) Math.random();
-        tx = x;
-        ty = y;
+        if (slot == -1)
+            slot = store.allocate();
+        final int i = slot;
+        store.x[i] = store.tx[i] = (float) Math.random();
+        store.y[i] = store.ty[i] = (float) Math.random();
+        store.radius[i] = 0;
+        store.color[i] = 0;
+        store.speed[i] = 0.9f;
         stroke = 0;
         strokeColor = 0;
-        speed = 0.9f;
         scale = 1f;
         textScale = 1f;
+        textColor = 0;
+        label = null;
+        shape = null;
+        props = null;
+        children = null;
     }
 
-    @Override
-    public String toString() {
-        return "vis[" + vertex.toString() + "]";
-    }
-
-    
-            
-    @Override
-    public int hashCode() {
-        return vertex.hashCode();
+    /** returns the slot to the store; reset() must be called before reuse */
+    void release() {
+        id = -1;
+        if (slot != -1) {
+            store.release(slot);
+            slot = -1;
+        }
+        vertex = null;
+        props = null;
+        children = null;
     }
 
+    /** equality and hash are by identity, as instances are reused for other vertices */
     @Override
-    public boolean equals(Object obj) {
-        return vertex.equals(obj);
+    public String toString() {
+        return "vis[" + vertex + "]";
     }
 
     public boolean draw(final AbstractGraphVis c, final PGraphics p) {
@@ -91,16 +109,38 @@ public class VertexVis<V, E> {
         boolean needsUpdate = update(c);
         //System.out.println(radius + " " + color + " " + label + " " + x + " " + y);
 
+        render(p);
+        renderLabel(p);
+        return needsUpdate;
+    }
+
+    /** draws the label as text at the current position */
+    protected void renderLabel(final PGraphics p) {
+        final int i = slot;
+        float r = store.radius[i] * scale;
+        if ((r == 0) || (label == null) || (textScale <= 0)) {
+            return;
+        }
+        p.fill(textColor);
+        p.textSize(r / 2f * textScale);
+        p.text(label, store.x[i] * scale, store.y[i] * scale);
+    }
+
+    /** draws the shape and children at the current position, without animating */
+    protected void render(final PGraphics p) {
+        final int i = slot;
+        final float radius = store.radius[i];
+        final float x = store.x[i], y = store.y[i];
         float r = radius * scale;
         if (r == 0) {
-            return needsUpdate;
+            return;
         }
         
         if (stroke > 0) {
             p.stroke(strokeColor);
             p.strokeWeight(stroke * scale);
         }
-        p.fill(color);
+        p.fill(store.color[i]);
         if (shape == null) shape = Ellipse;
         switch (shape) {
             case Rectangle:
@@ -112,12 +152,6 @@ public class VertexVis<V, E> {
                 break;
         }
         
-        if ((label != null) && (textScale > 0)) {
-            p.fill(textColor);
-            p.textSize(r / 2f * textScale);
-            p.text(label, x * scale, y * scale);
-        }
-        
         if (stroke > 0) {
             // reset stroke
             p.noStroke();
@@ -134,23 +168,14 @@ public class VertexVis<V, E> {
             }
             p.popMatrix();
         }
-        
-        return needsUpdate;
     }
 
     protected boolean update(AbstractGraphVis c) {
-        if (this.edges == null) {
-            if (c.currentGraph != null) {
-                this.edges = c.currentGraph.edgesOf(vertex);
-            }
-        }
-        x = (x * (1.0f - speed) + tx * (speed));
-        y = (y * (1.0f - speed) + ty * (speed));
-        return !((Math.abs(tx - x) + Math.abs(ty - y)) > AbstractGraphVis.vertexTargetThreshold);
-    }
-
-    public Set<E> getEdges() {
-        return edges;
+        final int i = slot;
+        final float s = store.speed[i];
+        final float x = store.x[i] += (store.tx[i] - store.x[i]) * s;
+        final float y = store.y[i] += (store.ty[i] - store.y[i]) * s;
+        return !((Math.abs(store.tx[i] - x) + Math.abs(store.ty[i] - y)) > AbstractGraphVis.vertexTargetThreshold);
     }
 
     public V getVertex() {
@@ -158,25 +183,64 @@ public class VertexVis<V, E> {
     }
 
     public void setPosition(final float x, final float y) {
-        this.tx = x;
-        this.ty = y;
+        store.tx[slot] = x;
+        store.ty[slot] = y;
     }
 
     public void movePosition(final float dx, final float dy) {
-        this.tx += dx;
-        this.ty += dy;
+        store.tx[slot] += dx;
+        store.ty[slot] += dy;
     }
 
+    /** target x position */
     public float getX() {
-        return tx;
+        return store.tx[slot];
     }
 
+    /** target y position */
     public float getY() {
-        return ty;
+        return store.ty[slot];
+    }
+
+    /** animated x position, where the vertex is drawn */
+    public float getCurrentX() {
+        return store.x[slot];
+    }
+
+    /** animated y position, where the vertex is drawn */
+    public float getCurrentY() {
+        return store.y[slot];
+    }
+
+    /** sets both the animated and target position */
+    public void setCurrentPosition(final float x, final float y) {
+        final int i = slot;
+        store.x[i] = store.tx[i] = x;
+        store.y[i] = store.ty[i] = y;
     }
 
     public float getRadius() {
-        return radius;
+        return store.radius[slot];
+    }
+
+    public void setRadius(final float radius) {
+        store.radius[slot] = radius;
+    }
+
+    public int getColor() {
+        return store.color[slot];
+    }
+
+    public void setColor(final int color) {
+        store.color[slot] = color;
+    }
+
+    public float getSpeed() {
+        return store.speed[slot];
+    }
+
+    public void setSpeed(final float speed) {
+        store.speed[slot] = speed;
     }
 
     public void addChild(Vis v) {
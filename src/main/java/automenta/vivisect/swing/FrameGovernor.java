@@ -0,0 +1,164 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.swing;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Limits the CPU time spent drawing the canvases of a reasoner while it is
+ * running.  Canvases report the time of each frame; once a second the
+ * governor compares the share of a core they used with cpuShare and
+ * scales their frame rates, and the periods returned by period(), down
+ * toward it, or back up toward their own rates when under it or when the
+ * reasoner is not cycling.  The factor also recovers for the time no
+ * frames were drawn, and is not lowered past the point where every canvas
+ * is already at minFrameRate.
+ *
+ * Only the time spent on the drawing threads is measured: work done by a
+ * canvas elsewhere, like the layout pool or a LayoutWorker, is excluded
+ * and limited by those.
+ */
+public class FrameGovernor {
+
+    /** fraction of one core the canvases may use while the reasoner runs */
+    public volatile float cpuShare = 0.25f;
+    /** lowest frame rate a canvas is slowed to */
+    public volatile float minFrameRate = 2f;
+
+    static final long stepNS = 1000000000L;
+
+    private static final Map<Object, FrameGovernor> governors = new WeakHashMap();
+
+    /**
+     * the governor shared by the views of a reasoner; it holds the reasoner
+     * weakly, so it can be collected with it
+     * @param cycles the cycle count of the reasoner, which must not refer to it otherwise
+     */
+    public static synchronized <R> FrameGovernor of(R reasoner, final ToLongFunction<R> cycles) {
+        FrameGovernor g = governors.get(reasoner);
+        if (g == null) {
+            final WeakReference<R> r = new WeakReference(reasoner);
+            governors.put(reasoner, g = new FrameGovernor(new LongSupplier() {
+                @Override public long getAsLong() {
+                    R x = r.get();
+                    return (x != null) ? cycles.applyAsLong(x) : 0;
+                }
+            }));
+        }
+        return g;
+    }
+
+    private final LongSupplier cycles;
+    private final List<PCanvas> canvases = new ArrayList();
+
+    /** fraction, in (0, 1], of their own frame rates the canvases are drawn at */
+    private volatile float factor = 1f;
+    private float cyclesPerSecond, renderShare;
+
+    private long stepStart = System.nanoTime();
+    private long stepCycles;
+    private long renderNS;
+
+    public FrameGovernor(LongSupplier cycles) {
+        this.cycles = cycles;
+        this.stepCycles = cycles.getAsLong();
+    }
+
+    public synchronized void add(PCanvas c) {
+        if (!canvases.contains(c))
+            canvases.add(c);
+    }
+
+    /** the canvas returns to its own frame rate with its next frame */
+    public synchronized void remove(PCanvas c) {
+        canvases.remove(c);
+    }
+
+    /** called by a canvas after each frame */
+    public synchronized void frameDrawn(PCanvas c, long ns) {
+        renderNS += ns;
+        adjust(System.nanoTime());
+    }
+
+    /**
+     * once a step has elapsed, compares the drawing time with cpuShare and
+     * sets the factor; may run on the reasoner thread, so the canvases apply
+     * it themselves through frameRate(PCanvas)
+     */
+    private void adjust(long now) {
+        long elapsed = now - stepStart;
+        if (elapsed < stepNS)
+            return;
+
+        long t = cycles.getAsLong();
+        cyclesPerSecond = (t - stepCycles) * 1e9f / elapsed;
+        renderShare = (float) renderNS / elapsed;
+        stepCycles = t;
+        stepStart = now;
+        renderNS = 0;
+
+        float f = factor;
+        if ((cyclesPerSecond > 0) && (renderShare > cpuShare)) {
+            f *= Math.max(0.25f, cpuShare / renderShare);
+        }
+        else {
+            //also for the steps in which nothing was drawn
+            f *= (float) Math.pow(1.25, (double) elapsed / stepNS);
+        }
+        factor = Math.max(minFactor(), Math.min(1f, f));
+    }
+
+    /** the frame rate a canvas should currently draw at; called by it before each frame */
+    public float frameRate(PCanvas c) {
+        return Math.max(minFrameRate, c.getTargetFrameRate() * factor);
+    }
+
+    /** lowest factor which still slows a canvas: below it, all are at minFrameRate */
+    private float minFactor() {
+        float maxRate = 0;
+        for (PCanvas p : canvases)
+            maxRate = Math.max(maxRate, p.getTargetFrameRate());
+        return (maxRate > minFrameRate) ? minFrameRate / maxRate : 1f;
+    }
+
+    /** a period, in ms, lengthened by as much as frame rates are currently reduced */
+    public long period(long ms) {
+        synchronized (this) {
+            //recovers while no canvas is drawing
+            adjust(System.nanoTime());
+        }
+        return (long) (ms / factor);
+    }
+
+    public float getFactor() {
+        return factor;
+    }
+
+    /** reasoner cycles per second, as of the last adjustment */
+    public synchronized float getCyclesPerSecond() {
+        return cyclesPerSecond;
+    }
+
+    /** share of a core used drawing the canvases, as of the last adjustment */
+    public synchronized float getRenderShare() {
+        return renderShare;
+    }
+}
@@ -19,10 +19,14 @@
  */
 package automenta.vivisect.swing;
 
+import automenta.vivisect.PhaseTimer;
 import automenta.vivisect.Vis;
+import java.awt.Font;
 import java.awt.event.HierarchyEvent;
 import java.awt.event.HierarchyListener;
+import java.util.List;
 import processing.core.PApplet;
+import processing.core.PFont;
 import static processing.core.PConstants.DOWN;
 import static processing.core.PConstants.LEFT;
 import static processing.core.PConstants.RIGHT;
@@ -45,6 +49,18 @@ public class PCanvas extends PApplet implements HierarchyListener {
     float FrameRate = 25f;
 
     boolean drawn = false;
+    /** when true, frames are drawn only while the vis needs them, or after requestRedraw() */
+    private volatile boolean onDemand = false;
+    private volatile boolean redrawRequested = false;
+    private volatile boolean showing = true;
+    /** when set, limits the frame rate with those of other canvases */
+    private FrameGovernor governor;
+    /** frame rate last set on the animation thread */
+    private float appliedRate = -1;
+    /** whether to overlay the phase times of the vis */
+    private volatile boolean showTimes = false;
+    /** monospaced, so the columns of the phase times line up */
+    private PFont timesFont;
     float motionBlur = 0.0f;
     private final Vis vis;
 
@@ -89,6 +105,16 @@ public class PCanvas extends PApplet implements HierarchyListener {
         return 1 / zoom * (y - dify - height / 2);
     }
 
+    /** world coordinate at a horizontal screen position */
+    public float getWorldX(final float screenX) {
+        return (screenX - difx - width / 2f) / zoom;
+    }
+
+    /** world coordinate at a vertical screen position */
+    public float getWorldY(final float screenY) {
+        return (screenY - dify - height / 2f) / zoom;
+    }
+
     public float getPanX() {
         return difx;
     }
@@ -112,6 +138,7 @@ public class PCanvas extends PApplet implements HierarchyListener {
         if ((newWidth > 0) && (newHeight > 0)) {
             super.resizeRenderer(newWidth, newHeight);
             drawn = false;
+            redraw();
         }
     }
 
@@ -126,6 +153,17 @@ public class PCanvas extends PApplet implements HierarchyListener {
 
     @Override
     public void mouseMoved() {
+        vis.onMouseMoved(getCursorX(), getCursorY());
+    }
+
+    @Override
+    public void mouseClicked() {
+        vis.onMouseClicked(getCursorX(), getCursorY(), mouseButton);
+    }
+
+    /** distance in world coordinates within which the cursor selects something */
+    public float getSelectionDistance() {
+        return selection_distance / zoom;
     }
 
     @Override
@@ -163,8 +201,94 @@ public class PCanvas extends PApplet implements HierarchyListener {
             background(0, 0, 0);//, 0.001f);
         }
 
+        redrawRequested = false;
+
+        //the governor decides the rate on other threads; it is applied from here
+        FrameGovernor rateGovernor = governor;
+        float rate = (rateGovernor != null) ? rateGovernor.frameRate(this) : FrameRate;
+        if (rate != appliedRate) {
+            appliedRate = rate;
+            frameRate(rate);
+        }
+
         hnav.applyTransform();
+        PhaseTimer timer = vis.getTimer();
+        long t = System.nanoTime();
         vis.draw(g);
+        FrameGovernor gov = governor;
+        if (gov != null)
+            gov.frameDrawn(this, System.nanoTime() - t);
+        if (timer != null) {
+            timer.record("frame", t);
+            if (showTimes)
+                drawTimes(timer);
+        }
+
+        if (onDemand && (motionBlur == 0) && !vis.needsRedraw()) {
+            noLoop();
+            //a request made while drawing restarts the loop
+            if (redrawRequested)
+                loop();
+        }
+    }
+
+    /** overlays the median, 95th percentile and maximum of each phase, in screen coordinates */
+    protected void drawTimes(PhaseTimer timer) {
+        List<String> lines = timer.summary();
+        PFont prevFont = g.textFont;
+        if (timesFont == null)
+            timesFont = createFont(Font.MONOSPACED, 12);
+
+        pushMatrix();
+        resetMatrix();
+        textFont(timesFont);
+        String header = String.format("%-24s %7s %7s %7s", "ms", "p50", "p95", "max");
+        noStroke();
+        fill(0, 0, 0, 180);
+        rect(4, 4, textWidth(header) + 12, 16 * (lines.size() + 1) + 8);
+        fill(255);
+        text(header, 10, 20);
+        for (int i = 0; i < lines.size(); i++) {
+            text(lines.get(i), 10, 20 + 16 * (i + 1));
+        }
+        popMatrix();
+        if (prevFont != null)
+            textFont(prevFont);
+    }
+
+    public PCanvas setShowTimes(boolean showTimes) {
+        this.showTimes = showTimes;
+        redraw();
+        return this;
+    }
+
+    public boolean isShowTimes() {
+        return showTimes;
+    }
+
+    /**
+     * in on-demand mode, resumes drawing until the vis no longer needs
+     * frames; may be called from any thread
+     */
+    public void requestRedraw() {
+        if (onDemand && showing) {
+            redrawRequested = true;
+            loop();
+        }
+    }
+
+    /** sets whether to draw only when needed, instead of at the frame rate */
+    public PCanvas setOnDemand(boolean onDemand) {
+        this.onDemand = onDemand;
+        if (onDemand)
+            requestRedraw();
+        else if (showing)
+            loop();
+        return this;
+    }
+
+    public boolean isOnDemand() {
+        return onDemand;
     }
 
     public void setMotionBlur(float motionBlur) {
@@ -208,6 +332,9 @@ public class PCanvas extends PApplet implements HierarchyListener {
     @Override
     public void removeNotify() {
         removeHierarchyListener(this);
+        FrameGovernor gov = governor;
+        if (gov != null)
+            gov.remove(this);
         super.removeNotify();
     }
 
@@ -222,9 +349,20 @@ public class PCanvas extends PApplet implements HierarchyListener {
 
     
     protected void onShowing(boolean showing) {
+        this.showing = showing;
         vis.onVisible(showing);
+
+        //only visible canvases are governed, which also releases hidden ones
+        FrameGovernor gov = governor;
+        if (gov != null) {
+            if (showing)
+                gov.add(this);
+            else
+                gov.remove(this);
+        }
         
         if (showing) {
+            requestRedraw();
             //restart loop? can this even happen
             //throw new RuntimeException("if this happens, looping state should be restored here");
         }
@@ -243,6 +381,24 @@ public class PCanvas extends PApplet implements HierarchyListener {
     public float getFrameRate() {
         return frameRate;
     }
+
+    /** the frame rate set, which a governor may currently reduce */
+    public float getTargetFrameRate() {
+        return FrameRate;
+    }
+
+    public PCanvas setGovernor(FrameGovernor g) {
+        if (governor != null)
+            governor.remove(this);
+        governor = g;
+        if (g != null)
+            g.add(this);
+        return this;
+    }
+
+    public FrameGovernor getGovernor() {
+        return governor;
+    }
     
     public PCanvas setZoom(float x, float y, float z) {
         setPanX(x);
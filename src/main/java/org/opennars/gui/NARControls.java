@@ -15,6 +15,7 @@
 package org.opennars.gui;
 
 import automenta.vivisect.swing.AwesomeButton;
+import automenta.vivisect.swing.FrameGovernor;
 import automenta.vivisect.swing.NSlider;
 import automenta.vivisect.swing.NWindow;
 import java.awt.BorderLayout;
@@ -91,6 +92,8 @@ public class NARControls extends JPanel implements ActionListener, EventObserver
     private final float defaultSpeed = 0.5f;
 
     private final int GUIUpdatePeriodMS = 75;
+    /** lengthens the update period while graph views are slowed for the reasoner */
+    private final FrameGovernor governor;
     private NSlider volumeSlider;
     
     private NSlider decisionThresholdSlider;
@@ -114,6 +117,7 @@ public class NARControls extends JPanel implements ActionListener, EventObserver
         super(new BorderLayout());
         
         this.nar = nar;
+        this.governor = FrameGovernor.of(nar, Nar::time);
         memory = nar.memory; 
         this.parent = parent;
         
@@ -293,7 +297,7 @@ public class NARControls extends JPanel implements ActionListener, EventObserver
             long now = System.currentTimeMillis();
             long deltaTime = now - lastUpdateTime;
             
-            if ((deltaTime >= GUIUpdatePeriodMS) /*|| (!updateScheduled.get())*/) {              
+            if ((deltaTime >= governor.period(GUIUpdatePeriodMS)) /*|| (!updateScheduled.get())*/) {              
                                                 
                 speedSlider.repaint();
                 
@@ -0,0 +1,398 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.opennars.LockedValueTypes.PortableDouble;
+import org.opennars.entity.Concept;
+import org.opennars.entity.Task;
+import org.opennars.entity.TermLink;
+import org.opennars.gui.util.NARGraph;
+import org.opennars.gui.util.TermFilter;
+import org.opennars.io.events.EventEmitter.EventObserver;
+import org.opennars.io.events.Events;
+import org.opennars.main.Nar;
+import org.opennars.storage.Memory;
+
+/**
+ * Long-lived concept graph which is kept up to date from memory events
+ * instead of being rebuilt from the whole concept bag every cycle.
+ *
+ * Which concepts, term links and tasks are displayed is decided on the
+ * reasoner thread, which records at most one pending change per vertex;
+ * changes cancelling each other are dropped, so the pending changes are
+ * bounded by the displayed selection however rarely the graph is updated.
+ * They are applied to the graph by update(), which is called from the thread
+ * that renders the graph.  The cost per update is therefore proportional to
+ * the number of changes since the last update, not to the number of concepts.
+ *
+ * When the number of displayed concepts exceeds the configured maximum, the
+ * least recently active concept is removed.  Concepts which are no longer
+ * allowed, as their priority decayed below the threshold, are removed as a
+ * few of the displayed concepts are checked again at the end of each cycle.
+ */
+public class ConceptGraph extends NARGraph implements EventObserver {
+
+    public final Memory memory;
+    private final Nar nar;
+
+    private final boolean includeTermLinks;
+    private final boolean includeTasks;
+
+    final PortableDouble minConceptPri;
+    final PortableDouble minTaskPri;
+    final PortableDouble nConcepts;
+    /** current concept filter; evaluated on the reasoner thread, so it must not read Swing components */
+    final Supplier<TermFilter> filter;
+
+    /** displayed concepts checked again at the end of each cycle */
+    static final int evictionChecks = 64;
+
+    private enum Change { add, remove, replace }
+
+    /** changes recorded by the reasoner thread since the last update() */
+    private static class Changes {
+        /** at most one change per concept or task vertex */
+        final Map<Object, Change> vertices = new LinkedHashMap();
+        /** concept of each task to add */
+        final Map<Task, Concept> taskConcepts = new HashMap();
+        /** source concept -&gt; (term link -&gt; target concept) */
+        final Map<Concept, Map<TermLink, Concept>> termLinks = new HashMap();
+        boolean reset;
+
+        void clear() {
+            vertices.clear();
+            taskConcepts.clear();
+            termLinks.clear();
+            reset = false;
+        }
+    }
+
+    /** guards pending */
+    private final Object changesLock = new Object();
+    private Changes pending = new Changes();
+    /** applied by update(); only used on the thread reading this graph */
+    private Changes applying = new Changes();
+
+    //reasoner thread: the selection displayed once the pending changes are applied
+
+    /** displayed concepts, in order of their most recent activity */
+    private final Map<Concept, Concept> recent = new LinkedHashMap(16, 0.75f, true);
+    /** displayed tasks by concept */
+    private final Map<Concept, Set<Task>> conceptTasks = new HashMap();
+    /** concept of each displayed task */
+    private final Map<Task, Concept> tasks = new HashMap();
+
+    /** concepts to check again, taken from recent once the previous ones were checked */
+    private Concept[] evictionOrder = new Concept[0];
+    private int evictionPos;
+
+    private boolean needInitialConcepts;
+    private boolean started;
+
+    public ConceptGraph(Nar nar, boolean includeTermLinks, boolean includeTasks, Supplier<TermFilter> filter,
+            PortableDouble minConceptPri, PortableDouble minTaskPri, PortableDouble nConcepts) {
+        super();
+        this.nar = nar;
+        this.memory = nar.memory;
+        this.includeTermLinks = includeTermLinks;
+        this.includeTasks = includeTasks;
+        this.filter = filter;
+        this.minConceptPri = minConceptPri;
+        this.minTaskPri = minTaskPri;
+        this.nConcepts = nConcepts;
+
+        needInitialConcepts = true;
+    }
+
+    private void setEvents(boolean n) {
+        memory.event.set(this, n,
+                Events.CyclesEnd.class,
+                Events.ConceptNew.class,
+                Events.ConceptForget.class,
+                Events.TermLinkSelect.class,
+                Events.TaskAdd.class,
+                Events.TaskRemove.class,
+                Events.ResetEnd.class
+                );
+    }
+
+    public boolean includesTermLinks() {
+        return includeTermLinks;
+    }
+
+    public boolean includesTasks() {
+        return includeTasks;
+    }
+
+    public void start() {
+        if (started) return;
+        started = true;
+        setEvents(true);
+    }
+
+    public void stop() {
+        if (!started) return;
+        started = false;
+        setEvents(false);
+    }
+
+    /** called from the reasoner thread; updates the selection and records the changes */
+    @Override
+    public void event(final Class event, final Object[] a) {
+        synchronized (changesLock) {
+            if (event == Events.ConceptNew.class) {
+                touchConcept((Concept) a[0]);
+            }
+            else if (event == Events.ConceptForget.class) {
+                removeConcept((Concept) a[0]);
+            }
+            else if (event == Events.TermLinkSelect.class) {
+                if (!includeTermLinks) return;
+                if (!(a[0] instanceof TermLink) || !(a[1] instanceof Concept)) return;
+                final TermLink t = (TermLink) a[0];
+                final Concept to = memory.concept(t.target);
+                if (to == null) return;
+                addTermLink((Concept) a[1], to, t);
+            }
+            else if (event == Events.TaskAdd.class) {
+                if (!includeTasks) return;
+                final Task t = (Task) a[0];
+                if (t.getTerm() == null) return;
+                final Concept c = memory.concept(t.getTerm());
+                if (c == null) return;
+                addTask(c, t);
+            }
+            else if (event == Events.TaskRemove.class) {
+                if (!includeTasks) return;
+                removeTask((Task) a[0]);
+            }
+            else if (event == Events.CyclesEnd.class) {
+                if (needInitialConcepts)
+                    getInitialConcepts();
+                evictDisallowed();
+            }
+            else if (event == Events.ResetEnd.class) {
+                recent.clear();
+                conceptTasks.clear();
+                tasks.clear();
+                evictionOrder = new Concept[0];
+                evictionPos = 0;
+                pending.clear();
+                pending.reset = true;
+                needInitialConcepts = true;
+            }
+        }
+    }
+
+    private void getInitialConcepts() {
+        needInitialConcepts = false;
+
+        synchronized (memory.concepts) {
+            for (final Concept c : memory) {
+                touchConcept(c);
+            }
+        }
+    }
+
+    /** removes the concepts no longer allowed among the next few displayed */
+    private void evictDisallowed() {
+        for (int k = 0; k < evictionChecks; k++) {
+            if (evictionPos >= evictionOrder.length) {
+                if (recent.isEmpty()) break;
+                evictionOrder = recent.keySet().toArray(new Concept[recent.size()]);
+                evictionPos = 0;
+            }
+            final Concept c = evictionOrder[evictionPos];
+            evictionOrder[evictionPos++] = null;
+            //containsKey does not count as activity
+            if (recent.containsKey(c) && !allow(c))
+                removeConcept(c);
+        }
+    }
+
+    /** applies the changes recorded since the last call; must be called from the thread reading this graph */
+    public ConceptGraph update() {
+        final Changes c;
+        synchronized (changesLock) {
+            c = pending;
+            pending = applying;
+            applying = c;
+        }
+
+        if (c.reset)
+            removeAllVertices(new ArrayList(vertexSet()));
+
+        for (final Map.Entry<Object, Change> e : c.vertices.entrySet()) {
+            final Object v = e.getKey();
+            final Change change = e.getValue();
+            if (change != Change.add)
+                removeVertex(v);
+            if (change != Change.remove)
+                addVertex(v);
+        }
+
+        for (final Map.Entry<Task, Concept> e : c.taskConcepts.entrySet()) {
+            final Task t = e.getKey();
+            final Concept from = e.getValue();
+            if (containsVertex(from) && containsVertex(t))
+                addEdge(from, t, new TermContent());
+        }
+
+        for (final Map.Entry<Concept, Map<TermLink, Concept>> e : c.termLinks.entrySet()) {
+            final Concept from = e.getKey();
+            if (!containsVertex(from)) continue;
+            for (final Map.Entry<TermLink, Concept> l : e.getValue().entrySet()) {
+                final Concept to = l.getValue();
+                if (containsVertex(to) && !containsTermLink(from, to, l.getKey()))
+                    addEdge(from, to, new TermLinkEdge(l.getKey()));
+            }
+        }
+
+        c.clear();
+        return this;
+    }
+
+    private boolean containsTermLink(final Concept from, final Concept to, final TermLink t) {
+        for (final Object e : getAllEdges(from, to)) {
+            if ((e instanceof TermLinkEdge) && t.equals(((TermLinkEdge) e).getObject()))
+                return true;
+        }
+        return false;
+    }
+
+    public void reset() {
+        removeAllVertices(new ArrayList(vertexSet()));
+    }
+
+    protected int getMaxConcepts() {
+        return (int) (nConcepts.get() * nar.narParameters.CONCEPT_BAG_SIZE);
+    }
+
+    protected boolean allow(final Concept c) {
+        if (c.getPriority() < minConceptPri.get())
+            return false;
+        if (filter == null)
+            return true;
+        TermFilter f = filter.get();
+        return (f == null) || f.accept(c.term);
+    }
+
+    /** records the change of a vertex, combined with the one pending for it */
+    private void record(final Object v, final Change change) {
+        final Map<Object, Change> vertices = pending.vertices;
+        final Change p = vertices.get(v);
+        if (p == null) {
+            vertices.put(v, change);
+        }
+        else if (change == Change.remove) {
+            if (p == Change.add) {
+                //never displayed
+                vertices.remove(v);
+            }
+            else {
+                vertices.put(v, Change.remove);
+            }
+        }
+        else if (p == Change.remove) {
+            vertices.put(v, Change.replace);
+        }
+        if ((change == Change.remove) && (v instanceof Task))
+            pending.taskConcepts.remove(v);
+    }
+
+    /** adds the concept if it is allowed, or refreshes its recency if already present */
+    protected boolean touchConcept(final Concept c) {
+        if (recent.get(c) != null)
+            return true;
+
+        if (!allow(c))
+            return false;
+
+        int max = getMaxConcepts();
+        if (max <= 0)
+            return false;
+
+        while (recent.size() >= max) {
+            removeConcept(recent.keySet().iterator().next());
+        }
+
+        recent.put(c, c);
+        record(c, Change.add);
+        return true;
+    }
+
+    protected void removeConcept(final Concept c) {
+        if (recent.remove(c) == null)
+            return;
+
+        //tasks are only displayed attached to their concept
+        final Set<Task> ts = conceptTasks.remove(c);
+        if (ts != null) {
+            for (final Task t : ts) {
+                tasks.remove(t);
+                record(t, Change.remove);
+            }
+        }
+
+        pending.termLinks.remove(c);
+        record(c, Change.remove);
+    }
+
+    protected void addTermLink(final Concept from, final Concept to, final TermLink t) {
+        if (from == to) return;
+        if (!touchConcept(from) || !touchConcept(to)) return;
+        //one of the two may have been evicted by touching the other
+        if (!recent.containsKey(from) || !recent.containsKey(to)) return;
+
+        Map<TermLink, Concept> l = pending.termLinks.get(from);
+        if (l == null) {
+            l = new HashMap(4);
+            pending.termLinks.put(from, l);
+        }
+        l.put(t, to);
+    }
+
+    protected void addTask(final Concept c, final Task t) {
+        if (t.getPriority() < minTaskPri.get()) return;
+        if (tasks.containsKey(t)) return;
+        if (!touchConcept(c)) return;
+
+        tasks.put(t, c);
+        Set<Task> ts = conceptTasks.get(c);
+        if (ts == null) {
+            ts = new HashSet(4);
+            conceptTasks.put(c, ts);
+        }
+        ts.add(t);
+        record(t, Change.add);
+        pending.taskConcepts.put(t, c);
+    }
+
+    protected void removeTask(final Task t) {
+        final Concept c = tasks.remove(t);
+        if (c == null) return;
+
+        conceptTasks.get(c).remove(t);
+        record(t, Change.remove);
+    }
+
+}
@@ -51,7 +51,7 @@ import org.opennars.entity.Sentence;
 import org.opennars.entity.Task;
 import org.opennars.entity.TaskLink;
 import org.opennars.gui.WrapLayout;
-import org.opennars.inference.TruthFunctions;
+import org.opennars.gui.util.TruthColors;
 import org.opennars.main.Parameters;
 import org.opennars.storage.Memory;
 
@@ -472,11 +472,7 @@ public class ConceptsPanel extends NPanel implements EventObserver, Runnable {
     
     public static Color getColor(float freq, float conf, float factor, Parameters narParameters) {
         float ii = 0.25f + (factor * conf) * 0.75f;
-        
-        float evidence = (float)TruthFunctions.c2w(conf, narParameters);
-        float positive_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*freq, narParameters);
-        float negative_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*(1.0f-freq), narParameters);
-        return new Color(positive_evidence_in_0_1,0.0f, negative_evidence_in_0_1, ii);
+        return new Color(TruthColors.of(narParameters).argb(freq, conf, ii), true);
     }
     
     public static class TruthChart extends ImagePanel {
@@ -27,7 +27,7 @@ import org.opennars.entity.Concept;
 import org.opennars.entity.Sentence;
 import org.opennars.entity.Task;
 import org.opennars.entity.TruthValue;
-import org.opennars.inference.TruthFunctions;
+import org.opennars.gui.util.TruthColors;
 import org.opennars.io.events.OutputHandler.OUT;
 
 
@@ -205,19 +205,17 @@ public class SwingLogText extends SwingText  {
                     //printColorBlock(LogPanel.getPriorityColor(priority), "  ");
                 
                     TruthValue tv = s.truth;
+                    TruthColors colors = TruthColors.of(this.nar.narParameters);
                     if (tv!=null) {          
-                        float evidence = (float)TruthFunctions.c2w(tv.getConfidence(), this.nar.narParameters);
-                        float pos_2 = (float)tv.getConfidence()*tv.getFrequency();
-                        float positive_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*tv.getFrequency(), this.nar.narParameters);
-                        float negative_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*(1.0f-tv.getFrequency()), this.nar.narParameters);
+                        float positive_evidence_in_0_1 = colors.positive(tv.getFrequency(), (float)tv.getConfidence());
+                        float negative_evidence_in_0_1 = colors.negative(tv.getFrequency(), (float)tv.getConfidence());
                         printColorBlock(LogPanel.getPositiveEvidenceColor(positive_evidence_in_0_1), "  ");
                         printColorBlock(LogPanel.getNegativeEvidenceColor(negative_evidence_in_0_1), "  ");                        
                     }
                     else if ( t.getBestSolution()!=null) {
-                        float evidence = (float)TruthFunctions.c2w(t.getBestSolution().truth.getConfidence(), this.nar.narParameters);
-                        float pos_2 = (float)t.getBestSolution().truth.getConfidence()*t.getBestSolution().truth.getFrequency();
-                        float positive_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*t.getBestSolution().truth.getFrequency(), this.nar.narParameters);
-                        float negative_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*(1.0f-t.getBestSolution().truth.getFrequency()), this.nar.narParameters);
+                        TruthValue best = t.getBestSolution().truth;
+                        float positive_evidence_in_0_1 = colors.positive(best.getFrequency(), (float)best.getConfidence());
+                        float negative_evidence_in_0_1 = colors.negative(best.getFrequency(), (float)best.getConfidence());
                         //printColorBlock(LogPanel.getStatementColor('=', priority, t.getBestSolution().truth.get), "    ");
                         printColorBlock(LogPanel.getPositiveEvidenceColor(positive_evidence_in_0_1), "  ");
                         printColorBlock(LogPanel.getNegativeEvidenceColor(negative_evidence_in_0_1), "  ");  
@@ -22,9 +22,9 @@ import automenta.vivisect.Video;
 import automenta.vivisect.graph.AbstractGraphVis;
 import automenta.vivisect.graph.EdgeVis;
 import automenta.vivisect.graph.GraphDisplay;
+import automenta.vivisect.graph.GraphLOD;
 import automenta.vivisect.graph.VertexVis;
 import automenta.vivisect.swing.NSlider;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import javax.swing.JPanel;
@@ -34,8 +34,10 @@ import org.opennars.entity.Task;
 import org.opennars.entity.TaskLink;
 import org.opennars.entity.TermLink;
 import org.opennars.language.Term;
+import org.opennars.gui.util.GraphArchive;
 import org.opennars.gui.util.NARGraph;
-import org.opennars.inference.TruthFunctions;
+import org.opennars.gui.util.TermLabels;
+import org.opennars.gui.util.TruthColors;
 import org.opennars.main.Nar;
 /**
  *
@@ -53,6 +55,9 @@ public class NARGraphDisplay<V,E> implements GraphDisplay<V,E> {
     
     int defaultEdgeColor = Video.color(127,127,127,200);
     int defaultTextColor = Video.color(255,255,255,255);
+    /** color of vertices without a truth value */
+    int noTruthColor = Video.color(127,127,127,255);
+    private TruthColors truthColors;
     private Nar nar;
     
     public NARGraphDisplay(Nar nar) {
@@ -76,6 +81,20 @@ public class NARGraphDisplay<V,E> implements GraphDisplay<V,E> {
         v.shape = Shape.Ellipse;
 
         float rad = 1f;
+
+        if (o instanceof GraphLOD.Supernode) {
+            int size = ((GraphLOD.Supernode) o).size();
+            rad = 2 + 2 * (float)Math.log(1 + size);
+            v.shape = Shape.Ellipse;
+            v.setColor(Video.colorHSB(0.6f, 0.4f, 0.5f, 0.75f));
+            setLabel(v, o.toString(), rad);
+            return;
+        }
+
+        if (o instanceof GraphArchive.Vertex) {
+            archivedVertex(v, (GraphArchive.Vertex) o);
+            return;
+        }
         
         if (o instanceof Sentence) {
             Sentence kb = (Sentence) o;
@@ -114,77 +133,97 @@ public class NARGraphDisplay<V,E> implements GraphDisplay<V,E> {
                 float saturation = 0.33f+0.66f*rad/9.0f;
                 // brightness*=brightness;
                 //saturation*=saturation;
-                 v.color =  Video.colorHSB( hue, saturation, brightness, 0.25f+(0.75f*alpha) );
+                 v.setColor(Video.colorHSB( hue, saturation, brightness, 0.25f+(0.75f*alpha) ));
             } 
             else
             if(x instanceof Task){
-                float rr=0.5f,gg=0.5f,bb=0.5f,aa=1.0f;
-
                 Task t = (Task) o;
                 if(t.sentence.truth!=null) {
-                    float conf = (float)t.sentence.truth.getConfidence();
-                    float freq = t.sentence.truth.getFrequency();
-                    aa = 0.25f + conf * 0.75f;
-                    float evidence = (float)TruthFunctions.c2w(conf, this.nar.narParameters);
-                    float positive_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*freq, this.nar.narParameters);
-                    float negative_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*(1.0f-freq), this.nar.narParameters);
-                    rr = positive_evidence_in_0_1;
-                    bb = negative_evidence_in_0_1;
-                    gg = 0.0f;
+                    v.setColor(truthColor(t.sentence.truth.getFrequency(), (float)t.sentence.truth.getConfidence()));
+                }
+                else {
+                    v.setColor(truthColor(Float.NaN, Float.NaN));
                 }
-
-                Color HSB = new Color(rr,gg,bb,aa);
-                float hsb[] = new float[3];
-                Color.RGBtoHSB((int)(rr*255.0f), (int)(gg*255.0f), (int)(bb*255.0f), hsb);
-                v.color =  Video.colorHSB( hsb[0], hsb[1], hsb[2], aa);
             }
         }
         else
         if(x instanceof Concept){
             Concept conc = ((Concept)o);
-            float rr=0.5f,gg=0.5f,bb=0.5f,aa=1.0f;
 
             if(conc.beliefs.size()>0) {
                 Sentence sent = conc.beliefs.get(0).sentence;
-                float conf = (float)sent.truth.getConfidence();
-                float freq = sent.truth.getFrequency();
-                aa = 0.25f + conf * 0.75f;
-                float evidence = (float)TruthFunctions.c2w(conf, this.nar.narParameters);
-                float positive_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*freq, this.nar.narParameters);
-                float negative_evidence_in_0_1 = (float)TruthFunctions.w2c(evidence*(1.0f-freq), this.nar.narParameters);
-                rr = positive_evidence_in_0_1;
-                bb = negative_evidence_in_0_1;
-                gg = 0.0f;
-                
+                v.setColor(truthColor(sent.truth.getFrequency(), (float)sent.truth.getConfidence()));
+            }
+            else {
+                v.setColor(truthColor(Float.NaN, Float.NaN));
             }
-            Color HSB = new Color(rr,gg,bb,aa);
-            float hsb[] = new float[3];
-            Color.RGBtoHSB((int)(rr*255.0f), (int)(gg*255.0f), (int)(bb*255.0f), hsb);
-            v.color =  Video.colorHSB( hsb[0], hsb[1], hsb[2], aa);
         }
          
        
 
         String label;
         if (o instanceof Concept) {
-             label = ((Concept) o).term.toString();
+             label = TermLabels.of(((Concept) o).term);
          } else if (o instanceof Task) {
              label = ((Task)o).sentence.toString();
          } else {
              label = o.toString();
          }
 
+         setLabel(v, label, rad);
+    }
+
+    private void setLabel(VertexVis<V, E> v, String label, float rad) {
          if (label.length() > maxLabelLen) {
              label = label.substring(0, maxLabelLen - 2) + "..";
          }
          
          v.label = label;         
-         v.speed = nodeSpeed;
-         v.radius = rad * nodeSize;
+         v.setSpeed(nodeSpeed);
+         v.setRadius(rad * nodeSize);
          v.textColor = defaultTextColor;
          v.textScale = textSize;
     }
 
+    /** styles a vertex replayed from a graph archive like the live object it was recorded from */
+    protected void archivedVertex(VertexVis<V, E> v, GraphArchive.Vertex a) {
+        float rad = 1f;
+        v.shape = Shape.Ellipse;
+
+        switch (a.kind) {
+            case GraphArchive.CONCEPT:
+                rad = 2 + 6 * a.priority;
+                v.setColor(truthColor(a.frequency, a.confidence));
+                break;
+            case GraphArchive.TASK:
+                rad = 2.0f + a.priority * 2.0f;
+                v.shape = Shape.Rectangle;
+                v.setColor(truthColor(a.frequency, a.confidence));
+                break;
+            default:
+                float bs = 0.33f+0.66f*rad/9.0f;
+                v.setColor(Video.colorHSB(0.0f, bs, bs, 0.25f+(0.75f*0.9f)));
+                break;
+        }
+
+        setLabel(v, a.label, rad);
+    }
+
+    /**
+     * red for positive and blue for negative evidence, opaque with confidence;
+     * grey if there is no truth value (NaN)
+     */
+    protected int truthColor(float freq, float conf) {
+        if (Float.isNaN(conf)) {
+            return noTruthColor;
+        }
+        TruthColors t = truthColors;
+        if (t == null) {
+            truthColors = t = TruthColors.of(nar.narParameters);
+        }
+        return t.argb(freq, conf);
+    }
+
     @Override
     public void edge(AbstractGraphVis<V, E> g, EdgeVis<V, E> e) {
    
@@ -206,6 +245,22 @@ public class NARGraphDisplay<V,E> implements GraphDisplay<V,E> {
             thickness = (1 + p) * lineWidth;
             color = Video.color(125f, 255f * (0.5f + p*0.5f), 125f, 255f * (0.5f + p*0.5f) );
         }
+        if (edge instanceof GraphLOD.SuperEdge) {
+            int count = ((GraphLOD.SuperEdge)edge).count();
+            thickness = (1 + (float)Math.log(count)) * lineWidth;
+        }
+        if (edge instanceof GraphArchive.Edge) {
+            GraphArchive.Edge a = (GraphArchive.Edge)edge;
+            float p = a.priority;
+            if (a.getType() == GraphArchive.TERMLINK) {
+                thickness = (1 + p) * lineWidth;
+                color = Video.color(255f * (0.5f + p*0.5f), 255f * (0.5f + p*0.5f), 125f, 255f * (0.5f + p*0.5f) );
+            }
+            else if (a.getType() == GraphArchive.TASKLINK) {
+                thickness = (1 + p) * lineWidth;
+                color = Video.color(125f, 255f * (0.5f + p*0.5f), 125f, 255f * (0.5f + p*0.5f) );
+            }
+        }
     
         e.color = color;
         e.thickness = thickness;
@@ -18,12 +18,16 @@
  */
 package org.opennars.gui.output.graph;
 
+import automenta.vivisect.swing.FrameGovernor;
 import automenta.vivisect.swing.NPanel;
 import automenta.vivisect.swing.NSlider;
 import automenta.vivisect.swing.PCanvas;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JCheckBox;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 import org.opennars.main.Nar;
@@ -54,6 +58,8 @@ public class NARGraphPanel extends NPanel {
             }            
         };
         canvas = new PCanvas(vis);
+        canvas.setOnDemand(true);
+        canvas.setGovernor(FrameGovernor.of(n, Nar::time));
 
         visControl = vis.newStylePanel();
         canvasControl = newCanvasPanel();
@@ -88,6 +94,16 @@ public class NARGraphPanel extends NPanel {
         blur.setPreferredSize(new Dimension(60, 25));
         m.add(blur);
 
+        final JCheckBox times = new JCheckBox("Times");
+        times.setToolTipText("Show the median, 95th percentile and maximum time of each phase of a frame");
+        times.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                canvas.setShowTimes(times.isSelected());
+            }
+        });
+        m.add(times);
+
         return m;
     }
 }
@@ -23,23 +23,47 @@ import automenta.vivisect.dimensionalize.HyperassociativeLayout;
 import automenta.vivisect.graph.AnimatingGraphVis;
 import automenta.vivisect.graph.GraphDisplay;
 import automenta.vivisect.graph.GraphDisplays;
+import automenta.vivisect.graph.GraphLOD;
+import automenta.vivisect.graph.LayoutWorker;
+import automenta.vivisect.graph.VertexVis;
+import automenta.vivisect.swing.FrameGovernor;
 import automenta.vivisect.swing.NSlider;
+import automenta.vivisect.swing.PCanvas;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import org.opennars.io.events.EventEmitter.EventObserver;
 import org.opennars.io.events.Events.CyclesEnd;
 import org.opennars.io.events.Events.ResetEnd;
 import org.opennars.main.Nar;
+import org.opennars.entity.Concept;
+import org.opennars.language.Term;
+import org.opennars.gui.output.ConceptButton;
 import org.opennars.gui.output.graph.layout.CircleLayout;
 import org.opennars.gui.util.DefaultGraphizer;
+import org.opennars.gui.util.GraphArchiveReader;
+import org.opennars.gui.util.GraphArchiveWriter;
+import org.opennars.gui.util.GraphSnapshot;
+import org.opennars.gui.util.GraphSnapshotWorker;
 import org.opennars.gui.util.NARGraph;
+import org.opennars.gui.util.SubtermIndex;
+import org.opennars.gui.util.TermFilter;
+import org.opennars.gui.graph.ConceptGraph;
 import org.opennars.gui.graph.InheritanceGraph;
 import org.opennars.gui.graph.ImplicationGraph;
 import org.opennars.gui.output.graph.layout.SpiralLayout;
@@ -62,9 +86,15 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
     private JPanel modePanelHolder;
     
     public interface GraphMode {
+        /** the graph to display next, or null if it will be published by onGraphBuilt */
         Graph nextGraph();
         default void stop() {
         }
+
+        /** true if nextGraph() applies queued changes to a long-lived graph; it is then only called from the render thread */
+        default boolean isIncremental() {
+            return false;
+        }
         
         JPanel newControlPanel();
     }
@@ -85,24 +115,16 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
     public final PortableDouble taskPriorityThreshold = new PortableDouble(0.1);
     public final PortableDouble nConcepts = new PortableDouble(0.004); //10000*0.004=40
     JTextField filterBox = new JTextField();
+    /** compiled from filterBox on the Swing thread whenever its text changes */
+    volatile TermFilter termFilter = TermFilter.All;
     NSlider conceptPriSlider = new NSlider(conceptPriorityThreshold, "ConcP", 0.0f, 1.0f);
     NSlider taskPriSlider = new NSlider(taskPriorityThreshold, "TaskP", 0.0f, 1.0f);
     NSlider nConceptsSlider = new NSlider(nConcepts, "number of Concepts: The maximum number of concepts (long slider for a good accuracy)", 0.0f, 1.0f);
-    public class ConceptGraphMode extends MinPriorityGraphMode implements GraphMode {
-        private boolean showBeliefs = false;    
-        private boolean showQuestions = false;
-        private boolean showTermContent = false;
-        
+    /** concepts selected by the filter and sliders, with their links */
+    public abstract class ConceptSelectionMode extends MinPriorityGraphMode {
         boolean showTaskLinks = false;
         boolean showTermLinks = true;
 
-        @Override
-        public Graph nextGraph() {
-            return new NARGraph().add(nar, new NARGraph.ExcludeBelowPriority(minPriority), 
-                    new DefaultGraphizer(showBeliefs, showBeliefs, showQuestions, showTermContent, 
-                            0, showTermLinks, showTaskLinks, filterBox, conceptPriorityThreshold, taskPriorityThreshold, nConcepts, nar.narParameters));
-        }
-
         @Override
         public JPanel newControlPanel() {
             JPanel j = super.newControlPanel();
@@ -127,16 +149,6 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
             });
             j.add(taskLinkEnable);
 
-           /* final JCheckBox beliefsEnable = new JCheckBox("Beliefs");
-            beliefsEnable.setSelected(showBeliefs);
-            beliefsEnable.addActionListener(new ActionListener() {
-                @Override public void actionPerformed(ActionEvent e) {
-                    showBeliefs = (beliefsEnable.isSelected());
-                    setUpdateNext();
-                }
-            });
-            j.add(beliefsEnable);*/
-            
             filterBox.setPreferredSize(new Dimension(100,20));
             j.add(filterBox);
             j.add(conceptPriSlider);
@@ -144,10 +156,81 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
             j.add(nConceptsSlider);
 
             return j;
-            
         }
-        
     }
+
+    /** concept graph rebuilt from snapshots of memory */
+    public class ConceptGraphMode extends ConceptSelectionMode {
+        private boolean showBeliefs = false;    
+        private boolean showQuestions = false;
+        private boolean showTermContent = false;
+
+        final SubtermIndex subtermIndex = new SubtermIndex();
+
+        /** builds the graphs from snapshots off the reasoner thread */
+        final GraphSnapshotWorker snapshots = new GraphSnapshotWorker((g, s) -> onGraphBuilt(g, s));
+
+        @Override
+        public Graph nextGraph() {
+            if (showBeliefs || showQuestions) {
+                //not captured by snapshots; build synchronously
+                DefaultGraphizer graphizer = new DefaultGraphizer(showBeliefs, showBeliefs, showQuestions, showTermContent, 
+                                0, showTermLinks, showTaskLinks, termFilter, conceptPriorityThreshold, taskPriorityThreshold, nConcepts, nar.narParameters)
+                        .setSubtermIndex(subtermIndex);
+                return new NARGraph().add(nar, new NARGraph.ExcludeBelowPriority(minPriority), graphizer, graphizer.getMaxConcepts());
+            }
+
+            snapshots.submit(snapshot(minPriority, showTermLinks, showTaskLinks, showTermContent));
+
+            //the new graph is published by onGraphBuilt when ready
+            return null;
+        }
+
+        @Override
+        public void stop() {
+            snapshots.stop();
+        }
+    }
+    /** concept graph maintained from memory events rather than rebuilt each cycle */
+    public class IncrementalConceptGraphMode extends ConceptSelectionMode {
+        private ConceptGraph cg;
+
+        @Override
+        public Graph nextGraph() {
+            if ((cg != null) && ((cg.includesTermLinks() != showTermLinks) || (cg.includesTasks() != showTaskLinks))) {
+                stop();
+            }
+            if (this.cg == null) {
+                this.cg = new ConceptGraph(nar, showTermLinks, showTaskLinks, () -> termFilter, conceptPriorityThreshold, taskPriorityThreshold, nConcepts);
+                cg.start();
+            }
+
+            return cg.update();
+        }
+
+        @Override
+        public void stop() {
+            if (cg != null) {
+                cg.stop();
+                cg = null;
+            }
+        }
+
+        @Override
+        public boolean isIncremental() {
+            return true;
+        }
+
+        /**
+         * the graph is only read on the render thread, so what it shows is
+         * archived from snapshots of the same selection instead
+         */
+        void archiveSnapshot() {
+            if (isArchiveDue(nar.time()))
+                archiveSnapshots.submit(snapshot(minPriority, showTermLinks, showTaskLinks, false));
+        }
+    }
+
     public class InheritanceGraphMode extends MinPriorityGraphMode implements GraphMode {
         private InheritanceGraph ig;
 
@@ -194,24 +277,155 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
         
     }
     
+    /** shows the frames of a graph archive instead of the reasoner's memory */
+    public class ReplayGraphMode implements GraphMode {
+        final String file;
+        private GraphArchiveReader archive;
+        final PortableDouble frame = new PortableDouble(0);
+        private int loadedFrame = -1;
+        private Graph graph;
+
+        public ReplayGraphMode(String file) {
+            this.file = file;
+        }
+
+        private synchronized GraphArchiveReader archive() throws IOException {
+            if (archive == null) {
+                archive = new GraphArchiveReader(file);
+                //start at the last frame
+                frame.set(Math.max(0, archive.size() - 1));
+                loadedFrame = -1;
+            }
+            return archive;
+        }
+
+        @Override
+        public Graph nextGraph() {
+            try {
+                GraphArchiveReader a = archive();
+                int f = Math.min((int) Math.round(frame.get()), a.size() - 1);
+                if ((f >= 0) && (f != loadedFrame)) {
+                    graph = a.load(f);
+                    loadedFrame = f;
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            return graph;
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (archive != null) {
+                try {
+                    archive.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                archive = null;
+            }
+        }
+
+        /** frames are loaded by getGraph() on the render thread, whether or not the reasoner is running */
+        @Override
+        public boolean isIncremental() {
+            return true;
+        }
+
+        @Override
+        public JPanel newControlPanel() {
+            JPanel j = new JPanel(new FlowLayout(FlowLayout.LEFT));
+            int frames = 0;
+            try {
+                frames = archive().size();
+            } catch (IOException ex) {
+                Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+            }
+
+            NSlider frameSlider = new NSlider(frame, "Frame", 0, Math.max(0, frames - 1)) {
+                @Override
+                public void onChange(float v) {
+                    setUpdateNext();
+                }
+            };
+            frameSlider.setPreferredSize(new Dimension(200, 25));
+            j.add(frameSlider);
+
+            final JButton refresh = new JButton("Refresh");
+            refresh.addActionListener(new ActionListener() {
+                @Override public void actionPerformed(ActionEvent e) {
+                    try {
+                        //pick up frames appended since the file was opened
+                        frameSlider.setMax(Math.max(0, archive().refresh() - 1));
+                    } catch (IOException ex) {
+                        Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            });
+            j.add(refresh);
+            return j;
+        }
+    }
+
     public GraphMode mode = new ConceptGraphMode();
+
+    /** number of vertices and edges above which clusters are collapsed, when clustering is selected */
+    public int lodBudget = 2000;
+
+    /** when not null, displayed graphs are appended to it every archivePeriod cycles */
+    private volatile GraphArchiveWriter archive;
+    /** builds the snapshots archived for incremental graphs */
+    private final GraphSnapshotWorker archiveSnapshots = new GraphSnapshotWorker((g, s) -> archive(g, s));
+    public int archivePeriod = 100;
+    private long archivedAt = -1;
     
     boolean updateNextGraph = false;
+
+    /** shortest period between snapshots taken on reasoner cycles, before the governor lengthens it */
+    long snapshotPeriodMS = 40;
+    private long snapshotAt = 0;
+
+    /**
+     * once a snapshot skipped by the governor is due, asks for it in case no
+     * cycle follows to take it: getGraph() then takes it if the reasoner has
+     * stopped meanwhile, and otherwise the next cycle does
+     */
+    private final Timer deferredSnapshot = new Timer(0, new ActionListener() {
+        @Override public void actionPerformed(ActionEvent e) {
+            if (updateNextGraph)
+                setUpdateNext();
+        }
+    });
             
     public NARGraphVis(Nar n) {
         super(null, new GraphDisplays());
         this.nar = n;
         this.displays = (GraphDisplays)getDisplay();
+        deferredSnapshot.setRepeats(false);
         NARGraphDisplay grap = new NARGraphDisplay(n);
-        update(grap, new FastOrganicLayout());
+        update(grap, new LayoutWorker(new FastOrganicLayout()));
+
+        filterBox.setToolTipText("text, /regex/, op:SYMBOL or <S COPULA P> with _ as wildcard");
+        filterBox.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { updateFilter(); }
+            @Override public void removeUpdate(DocumentEvent e) { updateFilter(); }
+            @Override public void changedUpdate(DocumentEvent e) { updateFilter(); }
+        });
+    }
+
+    protected void updateFilter() {
+        termFilter = TermFilter.compile(filterBox.getText());
+        setUpdateNext();
     }
     
     public void update(NARGraphDisplay style, GraphDisplay layout) {
+        if (this.layout instanceof LayoutWorker)
+            ((LayoutWorker)this.layout).stop();
         this.style = style;
         this.layout = layout;
-        displays.sequence.clear();
-        displays.sequence.add(style);
-        displays.sequence.add(layout);
+        displays.clear();
+        displays.add(style);
+        displays.add(layout);
         setUpdateNext();
     }
 
@@ -220,13 +434,45 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
         nar.memory.event.set(this, showing, CyclesEnd.class, ResetEnd.class);        
         if (!showing) {
             mode.stop();
+            if (layout instanceof LayoutWorker)
+                ((LayoutWorker)layout).stop();
         }
     }
 
     @Override
     public void event(Class event, Object[] args) {
         if (event == CyclesEnd.class) {
-            displayedGraph.set(nextGraph());
+            if (mode.isIncremental()) {
+                //changes are applied by getGraph() on the render thread
+                setUpdateNext();
+                if (mode instanceof IncrementalConceptGraphMode)
+                    ((IncrementalConceptGraphMode) mode).archiveSnapshot();
+            }
+            else {
+                PCanvas c = getCanvas();
+                FrameGovernor governor = (c != null) ? c.getGovernor() : null;
+                long now = System.currentTimeMillis();
+                long period = (governor != null) ? governor.period(snapshotPeriodMS) : 0;
+                if (now - snapshotAt < period) {
+                    //taken by getGraph() if the reasoner stops first
+                    updateNextGraph = true;
+                    if (!deferredSnapshot.isRunning()) {
+                        deferredSnapshot.setInitialDelay((int) Math.max(1, snapshotAt + period - now));
+                        deferredSnapshot.restart();
+                    }
+                    return;
+                }
+                snapshotAt = now;
+                updateNextGraph = false;
+
+                //graphs built from snapshots are published by onGraphBuilt
+                Graph g = nextGraph();
+                if (g != null) {
+                    displayedGraph.set(g);
+                    archive(g, null);
+                    requestRedraw();
+                }
+            }
         }
         else if (event == ResetEnd.class) {
             displayedGraph.set(null);
@@ -239,6 +485,30 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
         return mode.nextGraph();                
     }
 
+    /** opens the concept of a clicked vertex */
+    @Override
+    protected void onVertexClicked(VertexVis<Object, Object> v) {
+        final Object o = v.getVertex();
+        final Term term = TermClusterers.term(o);
+        if (term == null)
+            return;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override public void run() {
+                Concept c = (o instanceof Concept) ? (Concept) o : nar.memory.concept(term);
+                if (c != null)
+                    ConceptButton.popup(nar, c);
+            }
+        });
+    }
+
+    /** called from the snapshot worker thread when a graph has been built */
+    protected void onGraphBuilt(Graph g, GraphSnapshot s) {
+        displayedGraph.set(g);
+        archive(g, s);
+        //refresh the displayed vertices without requesting another snapshot
+        super.setUpdateNext();
+    }
+
     @Override
     public void setUpdateNext() {
         super.setUpdateNext();        
@@ -256,12 +526,16 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
         if (updateNextGraph) {
             updateNextGraph = false;
 
-            if (!nar.isRunning()) {
+            if (!nar.isRunning() || mode.isIncremental()) {
                 //only update from here if Nar isnt running; otherwise a concurrency exception can occurr
 
                 Graph ng = nextGraph();
-                if (ng!=null)
-                    displayedGraph.set(ng);            
+                if (ng!=null) {
+                    displayedGraph.set(ng);
+                    //concepts may only be read here while the reasoner is stopped
+                    if (!nar.isRunning())
+                        archive(ng, null);
+                }
             }
         }
         
@@ -270,6 +544,71 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
     
 
     
+    /**
+     * records the displayed graphs to an archive, at most once per period of
+     * cycles; the previous archive, if any, is closed
+     */
+    public void setArchive(GraphArchiveWriter a, int periodCycles) {
+        GraphArchiveWriter prev = this.archive;
+        this.archivePeriod = periodCycles;
+        this.archivedAt = -1;
+        this.archive = a;
+        if (a == null)
+            archiveSnapshots.stop();
+        if ((prev != null) && (prev != a)) {
+            try {
+                prev.close();
+            } catch (IOException ex) {
+                Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * snapshot of the concepts selected by the filter and sliders; must be
+     * taken on the reasoner thread, or while it is stopped
+     */
+    GraphSnapshot snapshot(float minPriority, boolean termLinks, boolean taskLinks, boolean termContent) {
+        DefaultGraphizer graphizer = new DefaultGraphizer(false, false, false, termContent,
+                        0, termLinks, taskLinks, termFilter, conceptPriorityThreshold, taskPriorityThreshold, nConcepts, nar.narParameters);
+        return new GraphSnapshot(nar, new NARGraph.ExcludeBelowPriority(minPriority), graphizer, graphizer.getMaxConcepts(),
+                termLinks, taskLinks, taskPriorityThreshold.get(), termContent);
+    }
+
+    /** whether a graph of the given time would be archived */
+    private boolean isArchiveDue(long now) {
+        GraphArchiveWriter a = archive;
+        if ((a == null) || (mode instanceof ReplayGraphMode))
+            return false;
+        synchronized (a) {
+            return (archivedAt == -1) || (now < archivedAt) || (now - archivedAt >= archivePeriod);
+        }
+    }
+
+    /**
+     * @param s the snapshot g was built from, or null when called on the
+     * reasoner thread or while it is stopped
+     */
+    private void archive(Graph g, GraphSnapshot s) {
+        GraphArchiveWriter a = archive;
+        if ((a == null) || (g == null) || (mode instanceof ReplayGraphMode))
+            return;
+
+        long now = (s != null) ? s.time : nar.time();
+        synchronized (a) {
+            //an earlier time means the reasoner was reset
+            if ((archivedAt != -1) && (now >= archivedAt) && (now - archivedAt < archivePeriod))
+                return;
+            archivedAt = now;
+            try {
+                a.append(g, now, s);
+            } catch (IOException ex) {
+                Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+                setArchive(null, archivePeriod);
+            }
+        }
+    }
+
     public JPanel newLayoutPanel() {
         JPanel j = new JPanel(new FlowLayout(FlowLayout.LEFT));
         final JComboBox layoutSelect = new JComboBox();
@@ -284,7 +623,7 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
             @Override public void actionPerformed(ActionEvent e) {
                 switch (layoutSelect.getSelectedIndex()) {
                     case 0:
-                        update(style, new FastOrganicLayout());     
+                        update(style, new LayoutWorker(new FastOrganicLayout()));
                         break;
                     case 1:
                         update(style, new HyperassociativeLayout());
@@ -304,6 +643,32 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
             }
         });
         j.add(layoutSelect);
+
+        final JComboBox detailSelect = new JComboBox();
+        detailSelect.addItem("All Detail");
+        detailSelect.addItem("Cluster by Operator");
+        detailSelect.addItem("Cluster by Subterm");
+        detailSelect.addItem("Cluster by Community");
+        detailSelect.setToolTipText("Collapse clusters into supernodes when the graph has more than " + lodBudget + " vertices and edges; zoom in to expand them");
+        detailSelect.addActionListener(new ActionListener() {
+            @Override public void actionPerformed(ActionEvent e) {
+                switch (detailSelect.getSelectedIndex()) {
+                    case 0:
+                        setLevelOfDetail(null);
+                        break;
+                    case 1:
+                        setLevelOfDetail(new GraphLOD(TermClusterers.Operator, lodBudget));
+                        break;
+                    case 2:
+                        setLevelOfDetail(new GraphLOD(TermClusterers.Subterm, lodBudget));
+                        break;
+                    case 3:
+                        setLevelOfDetail(new GraphLOD(new GraphLOD.Communities(), lodBudget));
+                        break;
+                }
+            }
+        });
+        j.add(detailSelect);
         return j;
     }
     
@@ -325,6 +690,8 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
         modeSel.addItem("Concepts");
         modeSel.addItem("Inheritance");       
         modeSel.addItem("Implication");  
+        modeSel.addItem("Concepts (Incremental)");
+        modeSel.addItem("Replay...");
         //modeSelect.setSelectedIndex(cg.mode);
         modeSel.addActionListener(new ActionListener() {
             @Override public void actionPerformed(ActionEvent e) {
@@ -338,6 +705,15 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
                     case 2:
                         setMode(new ImplicationGraphMode());
                         break;
+                    case 3:
+                        setMode(new IncrementalConceptGraphMode());
+                        break;
+                    case 4:
+                        JFileChooser chooser = new JFileChooser();
+                        if (chooser.showOpenDialog(j) == JFileChooser.APPROVE_OPTION) {
+                            setMode(new ReplayGraphMode(chooser.getSelectedFile().getPath()));
+                        }
+                        break;
 
                 }
                 setUpdateNext();
@@ -345,6 +721,28 @@ public class NARGraphVis extends AnimatingGraphVis<Object,Object> implements Eve
         });
         
         j.add(modeSel);
+
+        final JCheckBox record = new JCheckBox("Record");
+        record.setToolTipText("Append the displayed graph to an archive file every " + archivePeriod + " cycles");
+        record.addActionListener(new ActionListener() {
+            @Override public void actionPerformed(ActionEvent e) {
+                if (!record.isSelected()) {
+                    setArchive(null, archivePeriod);
+                    return;
+                }
+                JFileChooser chooser = new JFileChooser();
+                if (chooser.showSaveDialog(j) == JFileChooser.APPROVE_OPTION) {
+                    try {
+                        setArchive(new GraphArchiveWriter(chooser.getSelectedFile().getPath()), archivePeriod);
+                        return;
+                    } catch (IOException ex) {
+                        Logger.getLogger(NARGraphVis.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+                record.setSelected(false);
+            }
+        });
+        j.add(record);
         
         modePanelHolder = new JPanel(new FlowLayout());
         modePanelHolder.add(mode.newControlPanel());
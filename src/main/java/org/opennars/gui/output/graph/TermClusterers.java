@@ -0,0 +1,98 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.output.graph;
+
+import automenta.vivisect.graph.CSRGraph;
+import automenta.vivisect.graph.GraphLOD.Clusterer;
+import java.util.HashMap;
+import java.util.Map;
+import org.opennars.entity.Concept;
+import org.opennars.entity.Task;
+import org.opennars.language.CompoundTerm;
+import org.opennars.language.Term;
+
+/**
+ * Clusterings of NAR graph vertices by their terms, for GraphLOD.
+ */
+public class TermClusterers {
+
+    /** the term of a graph vertex, or null if it has none */
+    public static Term term(Object v) {
+        if (v instanceof Concept) return ((Concept) v).term;
+        if (v instanceof Task) return ((Task) v).getTerm();
+        if (v instanceof Term) return (Term) v;
+        return null;
+    }
+
+    /** clusters compound terms by operator and atomic terms together */
+    public static final Clusterer Operator = new Clusterer() {
+        @Override
+        public void cluster(CSRGraph g, Object[] keys) {
+            for (int i = 0; i < g.vertexCount(); i++) {
+                Term t = term(g.vertex(i));
+                if (t instanceof CompoundTerm) {
+                    keys[i] = ((CompoundTerm) t).operator();
+                }
+                else if (t != null) {
+                    keys[i] = "atoms";
+                }
+            }
+        }
+    };
+
+    /**
+     * clusters each term with the one of its components which is the most
+     * shared among the graph's terms; a term which is not compound is the
+     * key of its own cluster, so it collects the terms built from it
+     */
+    public static final Clusterer Subterm = new Clusterer() {
+        @Override
+        public void cluster(CSRGraph g, Object[] keys) {
+            final int n = g.vertexCount();
+            Term[] terms = new Term[n];
+            Map<Term, Integer> shared = new HashMap();
+            for (int i = 0; i < n; i++) {
+                Term t = terms[i] = term(g.vertex(i));
+                if (t instanceof CompoundTerm) {
+                    for (Term c : ((CompoundTerm) t).term) {
+                        shared.merge(c, 1, Integer::sum);
+                    }
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                Term t = terms[i];
+                if (t instanceof CompoundTerm) {
+                    Term best = null;
+                    int bestCount = 0;
+                    for (Term c : ((CompoundTerm) t).term) {
+                        int count = shared.get(c);
+                        if (count > bestCount) {
+                            best = c;
+                            bestCount = count;
+                        }
+                    }
+                    keys[i] = best;
+                }
+                else {
+                    keys[i] = t;
+                }
+            }
+        }
+    };
+
+    private TermClusterers() {
+    }
+}
@@ -64,11 +64,11 @@ public class CircleLayout implements GraphDisplay<Item, Object> {
         }
 
         float angle = ((arcStop - arcStart) * Video.hashFloat(x.hashCode()) + arcStart) * ((float) Math.PI * 2f);
-        v.tx = (float) (Math.cos(angle) * radius) * spacing;
-        v.ty = (float) (Math.sin(angle) * radius) * spacing;
+        v.setPosition((float) (Math.cos(angle) * radius) * spacing,
+                (float) (Math.sin(angle) * radius) * spacing);
 
         if(task) {
-            v.ty += spacing*Video.hashFloat(vertex.hashCode());
+            v.movePosition(0, spacing*Video.hashFloat(vertex.hashCode()));
         }
     }
 
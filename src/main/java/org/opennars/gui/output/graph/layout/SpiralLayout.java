@@ -69,11 +69,11 @@ public class SpiralLayout implements GraphDisplay<Item, Object> {
         float count_elems = nar.memory.concepts.size();
         // float ratio = 30.0f*(0.10f + (((float)priority) / (1.0f)));
         float ratio = 30.0f*(0.10f + (((float)i) / (count_elems)));
-        v.tx = (float) (ratio*Math.cos(ratio)) * spacing;
-        v.ty = (float) (ratio*Math.sin(ratio)) * spacing;
+        v.setPosition((float) (ratio*Math.cos(ratio)) * spacing,
+                (float) (ratio*Math.sin(ratio)) * spacing);
         
         if(task) {
-            v.ty += spacing*Video.hashFloat(vertex.hashCode());
+            v.movePosition(0, spacing*Video.hashFloat(vertex.hashCode()));
         }
         
     }
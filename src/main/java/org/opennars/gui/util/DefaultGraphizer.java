@@ -16,7 +16,6 @@ package org.opennars.gui.util;
 
 import java.util.HashMap;
 import java.util.Map;
-import javax.swing.JTextField;
 
 import org.opennars.main.Parameters;
 import org.opennars.entity.Concept;
@@ -65,12 +64,14 @@ public class DefaultGraphizer implements NARGraph.Graphize {
         this(false, false, false, false,0,false,false, null, null, null, null, null);
     }
     
-    JTextField filterBox;
+    /** compiled text filter of the concepts to include; no concepts are included if null */
+    TermFilter filter;
+    SubtermIndex subtermIndex;
     PortableDouble conceptPriorityThreshold;
     PortableDouble taskPriorityThreshold;
     PortableDouble nConcepts;
     public DefaultGraphizer(boolean includeBeliefs, boolean includeDerivations, boolean includeQuestions, boolean includeTermContent, 
-            int includeSyntax, boolean includeTermLinks, boolean includeTaskLinks, JTextField filterBox,
+            int includeSyntax, boolean includeTermLinks, boolean includeTaskLinks, TermFilter filter,
              PortableDouble conceptPriorityThreshold, PortableDouble taskPriorityThreshold, PortableDouble nConcepts, Parameters narParameters) {
         this.includeBeliefs = includeBeliefs;
         this.includeQuestions = includeQuestions;
@@ -79,7 +80,7 @@ public class DefaultGraphizer implements NARGraph.Graphize {
         this.includeSyntax = includeSyntax;
         this.includeTermLinks = includeTermLinks;
         this.includeTaskLinks = includeTaskLinks;
-        this.filterBox = filterBox;
+        this.filter = filter;
         this.conceptPriorityThreshold = conceptPriorityThreshold;
         this.taskPriorityThreshold = taskPriorityThreshold;
         this.nConcepts = nConcepts;
@@ -96,6 +97,22 @@ public class DefaultGraphizer implements NARGraph.Graphize {
     }
 
 
+    /** maximum number of concepts added per graph */
+    public int getMaxConcepts() {
+        if (nConcepts == null)
+            return Integer.MAX_VALUE;
+        return (int)Math.ceil(nConcepts.get()*((double)narParameters.CONCEPT_BAG_SIZE));
+    }
+
+    @Override
+    public boolean includeConcept(Concept c) {
+        if (this.filter == null)
+            return false;
+        if (c.getPriority() <= this.conceptPriorityThreshold.get())
+            return false;
+        return this.filter.accept(c.term);
+    }
+
     public void onTerm(NARGraph g, Term t) {
         
 
@@ -116,9 +133,7 @@ public class DefaultGraphizer implements NARGraph.Graphize {
         
         Term t = c.term;
 
-        if(this.filterBox != null && terms.size() < nConcepts.get()*((double)narParameters.CONCEPT_BAG_SIZE) &&
-                c.getPriority() > this.conceptPriorityThreshold.get() &&
-                ("".equals(this.filterBox.getText()) || t.toString().contains(this.filterBox.getText()))){
+        if(this.filter != null && terms.size() < getMaxConcepts() && includeConcept(c)){
             g.addVertex(c);
             terms.put(c.term, c);
         } else {
@@ -203,21 +218,15 @@ public class DefaultGraphizer implements NARGraph.Graphize {
             }
         }
         if (includeTermContent) {
-            for (final Term a : terms.keySet()) {
-                for (final Term b : terms.keySet()) {
-                    if (a == b) {
-                        continue;
-                    }
-                    if (a.containsTerm(b)) {
-                        g.addVertex(a);
-                        g.addVertex(b);
-                        g.addEdge(a, b, new NARGraph.TermContent());
-                    }
-                    if (b.containsTerm(a)) {
-                        g.addVertex(a);
-                        g.addVertex(b);
-                        g.addEdge(b, a, new NARGraph.TermContent());
-                    }
+            if (subtermIndex == null) {
+                subtermIndex = new SubtermIndex();
+            }
+            subtermIndex.build(terms.keySet());
+            for (final Term b : terms.keySet()) {
+                for (final Term a : subtermIndex.getContainers(b)) {
+                    g.addVertex(a);
+                    g.addVertex(b);
+                    g.addEdge(a, b, new NARGraph.TermContent());
                 }
             }
         }
@@ -275,6 +284,12 @@ public class DefaultGraphizer implements NARGraph.Graphize {
         }
     }
 
+    /** shares a subterm index between successive graphs, so that unchanged terms are not decomposed again */
+    public DefaultGraphizer setSubtermIndex(SubtermIndex subtermIndex) {
+        this.subtermIndex = subtermIndex;
+        return this;
+    }
+
     public void setShowSyntax(boolean showSyntax) {
         this.includeSyntax = showSyntax ? 1 : 0;
     }
@@ -0,0 +1,203 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the edges of a graph by (source, target, edge type), so a graph can
+ * test for an existing edge of the same type without listing the edges
+ * between two vertices.
+ *
+ * Vertices are numbered (ids are recycled when a vertex is released) and
+ * edge types are numbered per class, and the three are packed into a long
+ * key of an open addressing table:
+ *
+ *   bits 36..63: source id + 1,  bits 8..35: target id + 1,  bits 0..7: type
+ *
+ * so a key is never 0, which marks an empty slot.
+ */
+public class EdgeIndex {
+
+    private static final int MAX_VERTICES = (1 << 28) - 1;
+    private static final int MAX_TYPES = 1 << 8;
+
+    private static final AtomicInteger nextType = new AtomicInteger();
+    private static final ClassValue<Integer> types = new ClassValue<Integer>() {
+        @Override protected Integer computeValue(Class<?> type) {
+            return nextType.getAndIncrement();
+        }
+    };
+
+    private final Map<Object, Integer> ids = new HashMap();
+    private int nextId;
+    private int[] freeIds = new int[8];
+    private int numFree;
+
+    private long[] keys;
+    private int[] counts;
+    private int size, mask;
+
+    public EdgeIndex() {
+        keys = new long[16];
+        counts = new int[16];
+        mask = 15;
+    }
+
+    /**
+     * @return whether edges of this type can be indexed; there are only
+     * 256 type ids, shared by all graphs
+     */
+    public static boolean indexable(Class type) {
+        return types.get(type) < MAX_TYPES;
+    }
+
+    /** @return whether at least one edge of the type exists from s to t */
+    public boolean contains(Object s, Object t, Class type) {
+        Integer si = ids.get(s);
+        if (si == null) return false;
+        Integer ti = ids.get(t);
+        if (ti == null) return false;
+        return counts[slot(key(si, ti, type))] > 0;
+    }
+
+    public void add(Object s, Object t, Class type) {
+        long k = key(id(s), id(t), type);
+        int i = slot(k);
+        if (keys[i] == 0) {
+            keys[i] = k;
+            if (++size > (keys.length * 3) / 4) {
+                counts[i] = 1;
+                grow();
+                return;
+            }
+        }
+        counts[i]++;
+    }
+
+    /** removes one edge of the type from s to t, if any is indexed */
+    public void remove(Object s, Object t, Class type) {
+        Integer si = ids.get(s);
+        if (si == null) return;
+        Integer ti = ids.get(t);
+        if (ti == null) return;
+
+        int i = slot(key(si, ti, type));
+        if (keys[i] == 0) return;
+        if (--counts[i] <= 0)
+            delete(i);
+    }
+
+    /**
+     * releases the id of a vertex; its edges should have been removed first,
+     * since the id will be reused by another vertex
+     */
+    public void removeVertex(Object v) {
+        Integer i = ids.remove(v);
+        if (i == null) return;
+        if (numFree == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, numFree * 2);
+        freeIds[numFree++] = i;
+    }
+
+    public void clear() {
+        ids.clear();
+        nextId = numFree = 0;
+        Arrays.fill(keys, 0);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    /** number of distinct (source, target, type) keys */
+    public int size() {
+        return size;
+    }
+
+    private int id(Object v) {
+        Integer i = ids.get(v);
+        if (i == null) {
+            int n;
+            if (numFree > 0) {
+                n = freeIds[--numFree];
+            }
+            else {
+                if (nextId == MAX_VERTICES)
+                    throw new IllegalStateException("EdgeIndex: too many vertices");
+                n = nextId++;
+            }
+            ids.put(v, n);
+            return n;
+        }
+        return i;
+    }
+
+    private static long key(int s, int t, Class type) {
+        return (((long) (s + 1)) << 36) | (((long) (t + 1)) << 8) | types.get(type);
+    }
+
+    private static int hash(long k) {
+        k *= 0x9E3779B97F4A7C15L;
+        return (int) (k ^ (k >>> 32));
+    }
+
+    /** slot holding k, or the empty slot where it would be inserted */
+    private int slot(long k) {
+        int i = hash(k) & mask;
+        long x;
+        while (((x = keys[i]) != 0) && (x != k)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** removes slot i, shifting back the entries of its probe sequence */
+    private void delete(int i) {
+        size--;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long k = keys[j];
+            if (k == 0) break;
+            int home = hash(k) & mask;
+            //move k into the hole at i unless its home lies cyclically in (i, j]
+            if ((i <= j) ? ((i < home) && (home <= j)) : ((i < home) || (home <= j)))
+                continue;
+            keys[i] = k;
+            counts[i] = counts[j];
+            i = j;
+        }
+        keys[i] = 0;
+        counts[i] = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int cap = oldKeys.length * 2;
+        keys = new long[cap];
+        counts = new int[cap];
+        mask = cap - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == 0) continue;
+            int i = slot(k);
+            keys[i] = k;
+            counts[i] = oldCounts[j];
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+/**
+ * Binary, append-only archive of graph snapshots, written by
+ * GraphArchiveWriter and read by GraphArchiveReader.
+ *
+ * A file is a sequence of frames, each of which is:
+ * <pre>
+ *   int   MAGIC
+ *   int   length of the rest of the frame, in bytes
+ *   long  time
+ *   int   number of new strings, then per string: int length, UTF-8 bytes
+ *   int   number of vertices, then per vertex:
+ *           int string id, byte kind, float priority, float frequency, float confidence
+ *   int   number of edges, then per edge:
+ *           int source vertex, int target vertex, byte type, float priority
+ * </pre>
+ * Strings are numbered in the order they first appear in the file, so each
+ * label is stored once however many frames it appears in.  Frequency and
+ * confidence are NaN for vertices without a truth value.  An incomplete
+ * frame at the end of the file (from an interrupted write) is ignored by
+ * readers and overwritten by the next writer.
+ */
+public final class GraphArchive {
+
+    public static final int MAGIC = 0x4E415231; //"NAR1"
+
+    /** bytes before the body of a frame */
+    public static final int FRAME_HEADER = 8;
+
+    /** vertex kinds */
+    public static final byte CONCEPT = 0, TERM = 1, TASK = 2, OTHER = 3;
+
+    public static final int VERTEX_BYTES = 4 + 1 + 4 + 4 + 4;
+    public static final int EDGE_BYTES = 4 + 4 + 1 + 4;
+
+    /** edge classes, stored as their index + 1; 0 is any other edge */
+    static final Class[] edgeTypes = {
+        NARGraph.TermLinkEdge.class, NARGraph.TaskLinkEdge.class, NARGraph.TermContent.class,
+        NARGraph.TermBelief.class, NARGraph.TermQuestion.class, NARGraph.TermDerivation.class,
+        NARGraph.TermType.class, NARGraph.SentenceContent.class
+    };
+    static final String[] edgeNames = {
+        "edge", "termlink", "tasklink", "has", "belief", "question", "derives", "type", "sentence"
+    };
+
+    public static final byte TERMLINK = 1, TASKLINK = 2;
+
+    private GraphArchive() {
+    }
+
+    static byte edgeType(Object e) {
+        for (int i = 0; i < edgeTypes.length; i++) {
+            if (edgeTypes[i] == e.getClass()) {
+                return (byte) (i + 1);
+            }
+        }
+        return 0;
+    }
+
+    /** a vertex of a replayed frame; equal to the same label and kind in any other frame */
+    public static class Vertex {
+        public final String label;
+        public final byte kind;
+        public final float priority, frequency, confidence;
+        private final int hash;
+
+        public Vertex(String label, byte kind, float priority, float frequency, float confidence) {
+            this.label = label;
+            this.kind = kind;
+            this.priority = priority;
+            this.frequency = frequency;
+            this.confidence = confidence;
+            this.hash = 31 * label.hashCode() + kind;
+        }
+
+        public boolean hasTruth() {
+            return !Float.isNaN(confidence);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Vertex)) return false;
+            Vertex v = (Vertex) obj;
+            return (v.kind == kind) && v.label.equals(label);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /** an edge of a replayed frame */
+    public static class Edge extends NARGraph.NAREdge<Byte> {
+        public final float priority;
+
+        public Edge(byte type, float priority) {
+            super(type);
+            this.priority = priority;
+        }
+
+        public byte getType() {
+            return getObject();
+        }
+
+        @Override
+        public String toString() {
+            int t = getType();
+            return ((t >= 0) && (t < edgeNames.length)) ? edgeNames[t] : edgeNames[0];
+        }
+    }
+}
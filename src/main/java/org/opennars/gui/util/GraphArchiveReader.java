@@ -0,0 +1,237 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the frames of a GraphArchive file through memory-mapped buffers.
+ *
+ * Opening the file only walks the frame headers and the string table;
+ * vertices and edges of a frame are decoded when it is loaded.
+ */
+public class GraphArchiveReader implements Closeable {
+
+    private final FileChannel channel;
+
+    /** position and length of each frame's body */
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private long[] times = new long[16];
+    private int frames;
+
+    /**
+     * first frame of each run of increasing times; a new segment starts
+     * when the time goes back, i.e. the reasoner was reset
+     */
+    private int[] segments = new int[4];
+    private int numSegments;
+
+    /** position after the last complete frame */
+    private long end;
+    /** size of the file when last refreshed */
+    private long refreshedSize = -1;
+
+    private String[] strings = new String[256];
+    private int numStrings;
+
+    public GraphArchiveReader(String file) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        try {
+            refresh();
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * reads the frames appended since the file was opened or last refreshed,
+     * which allows following a file which is still being written.  The part
+     * of the file after the last complete frame is mapped once each time the
+     * file has grown.
+     * @return number of frames
+     */
+    public synchronized int refresh() throws IOException {
+        long size = channel.size();
+        if (size == refreshedSize)
+            return frames;
+
+        long span = Math.min(size - end, Integer.MAX_VALUE);
+        //remapped next time even if the size stays, when the rest did not fit
+        refreshedSize = (span == size - end) ? size : -1;
+        if (span < GraphArchive.FRAME_HEADER)
+            return frames;
+
+        MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, end, span);
+        int pos = 0;
+        while (pos + GraphArchive.FRAME_HEADER <= span) {
+            if (b.getInt(pos) != GraphArchive.MAGIC) break;
+            int length = b.getInt(pos + 4);
+            int body = pos + GraphArchive.FRAME_HEADER;
+            if ((length < 12) || (body + (long) length > span)) break;
+
+            b.position(body);
+            long time = b.getLong();
+            int n = b.getInt();
+            for (int i = 0; i < n; i++) {
+                byte[] s = new byte[b.getInt()];
+                b.get(s);
+                addString(new String(s, StandardCharsets.UTF_8));
+            }
+
+            addFrame(end + body, length, time);
+            pos = body + length;
+        }
+        end += pos;
+        return frames;
+    }
+
+    private void addString(String s) {
+        if (numStrings == strings.length)
+            strings = Arrays.copyOf(strings, numStrings * 2);
+        strings[numStrings++] = s;
+    }
+
+    private void addFrame(long offset, int length, long time) {
+        if (frames == offsets.length) {
+            int cap = frames * 2;
+            offsets = Arrays.copyOf(offsets, cap);
+            lengths = Arrays.copyOf(lengths, cap);
+            times = Arrays.copyOf(times, cap);
+        }
+        if ((frames == 0) || (time < times[frames - 1])) {
+            if (numSegments == segments.length)
+                segments = Arrays.copyOf(segments, numSegments * 2);
+            segments[numSegments++] = frames;
+        }
+        offsets[frames] = offset;
+        lengths[frames] = length;
+        times[frames] = time;
+        frames++;
+    }
+
+    /** number of complete frames */
+    public synchronized int size() {
+        return frames;
+    }
+
+    public synchronized long time(int frame) {
+        return times[frame];
+    }
+
+    /** number of runs of increasing times, separated by resets of the reasoner */
+    public synchronized int segmentCount() {
+        return numSegments;
+    }
+
+    /** @return the segment containing a frame */
+    public synchronized int segmentOf(int frame) {
+        int i = Arrays.binarySearch(segments, 0, numSegments, frame);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+    /** @return the first frame of a segment */
+    public synchronized int segmentStart(int segment) {
+        return segments[segment];
+    }
+
+    /**
+     * @return the last frame at or before a time in the latest segment, or
+     * -1 if there is none
+     */
+    public synchronized int frameAt(long time) {
+        return frameAt(numSegments - 1, time);
+    }
+
+    /**
+     * @return the last frame at or before a time within a segment, or -1 if
+     * there is none
+     */
+    public synchronized int frameAt(int segment, long time) {
+        if ((segment < 0) || (segment >= numSegments)) return -1;
+        int from = segments[segment];
+        int to = (segment + 1 < numSegments) ? segments[segment + 1] : frames;
+        int i = Arrays.binarySearch(times, from, to, time);
+        if (i >= 0) return i;
+        i = -i - 2;
+        return (i >= from) ? i : -1;
+    }
+
+    /** file position after the last complete frame */
+    public synchronized long end() {
+        return end;
+    }
+
+    public synchronized int stringCount() {
+        return numStrings;
+    }
+
+    public synchronized String string(int id) {
+        return strings[id];
+    }
+
+    /**
+     * decodes a frame into a graph of GraphArchive.Vertex and
+     * GraphArchive.Edge
+     */
+    public synchronized NARGraph load(int frame) throws IOException {
+        MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, offsets[frame], lengths[frame]);
+
+        b.position(8);
+        int n = b.getInt();
+        for (int i = 0; i < n; i++) {
+            //already in the string table
+            int length = b.getInt();
+            b.position(b.position() + length);
+        }
+
+        NARGraph g = new NARGraph();
+
+        int nv = b.getInt();
+        GraphArchive.Vertex[] vertices = new GraphArchive.Vertex[nv];
+        for (int i = 0; i < nv; i++) {
+            String label = strings[b.getInt()];
+            byte kind = b.get();
+            float pri = b.getFloat(), freq = b.getFloat(), conf = b.getFloat();
+            GraphArchive.Vertex v = new GraphArchive.Vertex(label, kind, pri, freq, conf);
+            vertices[i] = v;
+            g.addVertex(v);
+        }
+
+        int ne = b.getInt();
+        for (int i = 0; i < ne; i++) {
+            int s = b.getInt(), t = b.getInt();
+            byte type = b.get();
+            float pri = b.getFloat();
+            g.addEdge(vertices[s], vertices[t], new GraphArchive.Edge(type, pri), true);
+        }
+
+        return g;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
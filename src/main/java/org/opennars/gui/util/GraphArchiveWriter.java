@@ -0,0 +1,238 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jgrapht.Graph;
+import org.opennars.entity.Concept;
+import org.opennars.entity.Task;
+import org.opennars.entity.TruthValue;
+import org.opennars.language.Term;
+
+/**
+ * Appends graph snapshots to a GraphArchive file.  An existing file is
+ * continued: its string table is reloaded so labels are still stored once.
+ */
+public class GraphArchiveWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final Map<String, Integer> strings = new HashMap();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private int frames;
+
+    public GraphArchiveWriter(String file) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = 0;
+            if (channel.size() > 0) {
+                try (GraphArchiveReader r = new GraphArchiveReader(file)) {
+                    for (int i = 0; i < r.stringCount(); i++) {
+                        strings.put(r.string(i), i);
+                    }
+                    frames = r.size();
+                    end = r.end();
+                }
+                //drop an incomplete last frame
+                channel.truncate(end);
+            }
+            channel.position(end);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** number of frames in the file */
+    public synchronized int size() {
+        return frames;
+    }
+
+    /**
+     * appends a frame; the graph must not be modified meanwhile, so call this
+     * from the thread which owns it.  Concepts are read directly, so this
+     * must also run on the reasoner thread (or while it is paused).
+     */
+    public void append(Graph g, long time) throws IOException {
+        append(g, time, null);
+    }
+
+    /**
+     * appends a frame built from a snapshot; the concepts' priority and truth
+     * are taken from the snapshot, so this can run on any thread
+     * @param snapshot the snapshot the graph was built from, or null to read the concepts directly
+     */
+    public synchronized void append(Graph g, long time, GraphSnapshot snapshot) throws IOException {
+        int nv = g.vertexSet().size();
+
+        Map<Object, Integer> captured = null;
+        if (snapshot != null) {
+            captured = new HashMap(snapshot.size() * 2);
+            for (int i = 0; i < snapshot.size(); i++) {
+                captured.put(snapshot.concepts[i], i);
+            }
+        }
+        Map<Object, Integer> index = new HashMap(nv * 2);
+        int[] label = new int[nv];
+        byte[] kind = new byte[nv];
+        float[] pri = new float[nv], freq = new float[nv], conf = new float[nv];
+
+        //strings first used by this frame; added to the table once the frame is written
+        Map<String, Integer> pending = new HashMap();
+        List<byte[]> newStrings = new ArrayList();
+        int stringBytes = 0;
+
+        int v = 0;
+        for (Object o : g.vertexSet()) {
+            String l;
+            TruthValue truth = null;
+            Integer si = (captured != null) ? captured.get(o) : null;
+            if (si != null) {
+                l = snapshot.concepts[si].term.toString();
+                kind[v] = GraphArchive.CONCEPT;
+                pri[v] = snapshot.priority[si];
+                freq[v] = snapshot.frequency[si];
+                conf[v] = snapshot.confidence[si];
+            }
+            else if (o instanceof Concept) {
+                Concept c = (Concept) o;
+                l = c.term.toString();
+                kind[v] = GraphArchive.CONCEPT;
+                pri[v] = c.getPriority();
+                if (!c.beliefs.isEmpty())
+                    truth = c.beliefs.get(0).sentence.truth;
+            }
+            else if (o instanceof Task) {
+                Task t = (Task) o;
+                l = t.sentence.toString();
+                kind[v] = GraphArchive.TASK;
+                pri[v] = t.getPriority();
+                truth = t.sentence.truth;
+            }
+            else {
+                l = o.toString();
+                kind[v] = (o instanceof Term) ? GraphArchive.TERM : GraphArchive.OTHER;
+            }
+
+            if (truth != null) {
+                freq[v] = truth.getFrequency();
+                conf[v] = (float) truth.getConfidence();
+            }
+            else if (si == null) {
+                freq[v] = conf[v] = Float.NaN;
+            }
+
+            Integer s = strings.get(l);
+            if (s == null) s = pending.get(l);
+            if (s == null) {
+                s = strings.size() + pending.size();
+                pending.put(l, s);
+                byte[] b = l.getBytes(StandardCharsets.UTF_8);
+                newStrings.add(b);
+                stringBytes += 4 + b.length;
+            }
+            label[v] = s;
+            index.put(o, v);
+            v++;
+        }
+
+        int ne = g.edgeSet().size();
+        int bodyLength = 8 + 4 + stringBytes + 4 + nv * GraphArchive.VERTEX_BYTES + 4 + ne * GraphArchive.EDGE_BYTES;
+
+        ByteBuffer b = buffer(GraphArchive.FRAME_HEADER + bodyLength);
+        b.putInt(GraphArchive.MAGIC);
+        int lengthPos = b.position();
+        b.putInt(bodyLength);
+        b.putLong(time);
+
+        b.putInt(newStrings.size());
+        for (byte[] s : newStrings) {
+            b.putInt(s.length);
+            b.put(s);
+        }
+
+        b.putInt(nv);
+        for (int i = 0; i < nv; i++) {
+            b.putInt(label[i]);
+            b.put(kind[i]);
+            b.putFloat(pri[i]);
+            b.putFloat(freq[i]);
+            b.putFloat(conf[i]);
+        }
+
+        int edgeCountPos = b.position();
+        b.putInt(ne);
+        int written = 0;
+        for (Object e : g.edgeSet()) {
+            Integer s = index.get(g.getEdgeSource(e));
+            Integer t = index.get(g.getEdgeTarget(e));
+            if ((s == null) || (t == null)) continue;
+
+            float p = 0;
+            if (e instanceof NARGraph.TermLinkEdge) {
+                p = ((NARGraph.TermLinkEdge) e).getObject().getPriority();
+            }
+            else if (e instanceof NARGraph.TaskLinkEdge) {
+                p = ((NARGraph.TaskLinkEdge) e).getObject().targetTask.getPriority();
+            }
+
+            b.putInt(s);
+            b.putInt(t);
+            b.put(GraphArchive.edgeType(e));
+            b.putFloat(p);
+            written++;
+        }
+        if (written != ne) {
+            //edges whose endpoints were missing were skipped
+            b.putInt(edgeCountPos, written);
+            b.putInt(lengthPos, b.position() - GraphArchive.FRAME_HEADER);
+        }
+
+        b.flip();
+        while (b.hasRemaining()) {
+            channel.write(b);
+        }
+        strings.putAll(pending);
+        frames++;
+    }
+
+    /** forces written frames to the storage device */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer buffer(int size) {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        return buffer;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.opennars.entity.Concept;
+import org.opennars.entity.TaskLink;
+import org.opennars.entity.TermLink;
+import org.opennars.entity.Task;
+import org.opennars.entity.TruthValue;
+import org.opennars.language.Term;
+import org.opennars.main.Nar;
+
+/**
+ * Immutable copy of the concepts, priorities and link endpoints selected
+ * from memory at one point in time.  Capturing it is cheap and must happen
+ * on the reasoner thread (or while the reasoner is paused); building the
+ * NARGraph from it only reads the copied arrays and can be done by any thread.
+ */
+public final class GraphSnapshot {
+
+    public final long time;
+
+    /** selected concepts, highest priority first */
+    public final Concept[] concepts;
+
+    /** priority of each concept at capture time */
+    public final float[] priority;
+
+    /** truth of each concept's strongest belief at capture time, or NaN if it has none */
+    public final float[] frequency, confidence;
+
+    public final TermLink[] termLinks;
+    /** indices into concepts */
+    public final int[] termLinkSource, termLinkTarget;
+
+    public final TaskLink[] taskLinks;
+    /** index into concepts of each tasklink's owner */
+    public final int[] taskLinkSource;
+    /** index into concepts of the concept of each tasklink's task, or -1 if it is not in the snapshot */
+    public final int[] taskConcept;
+
+    public final boolean includeTermContent;
+
+    public GraphSnapshot(Nar n, NARGraph.Filter filter, NARGraph.Graphize selector, int maxConcepts,
+            boolean includeTermLinks, boolean includeTaskLinks, double minTaskPriority, boolean includeTermContent) {
+
+        this.time = n.time();
+        this.includeTermContent = includeTermContent;
+
+        concepts = NARGraph.selectConcepts(n, filter, selector, maxConcepts);
+
+        int num = concepts.length;
+        priority = new float[num];
+        frequency = new float[num];
+        confidence = new float[num];
+
+        Map<Term, Integer> index = new HashMap(num * 2);
+        for (int i = 0; i < num; i++) {
+            Concept c = concepts[i];
+            priority[i] = c.getPriority();
+            if (!c.beliefs.isEmpty()) {
+                TruthValue truth = c.beliefs.get(0).sentence.truth;
+                frequency[i] = truth.getFrequency();
+                confidence[i] = (float) truth.getConfidence();
+            }
+            else {
+                frequency[i] = confidence[i] = Float.NaN;
+            }
+            index.put(c.term, i);
+        }
+
+        int nt = 0;
+        TermLink[] tl = new TermLink[num];
+        int[] ts = new int[num], tt = new int[num];
+        if (includeTermLinks) {
+            for (int i = 0; i < num; i++) {
+                for (TermLink x : concepts[i].termLinks) {
+                    Integer j = index.get(x.target);
+                    if ((j == null) || (j == i)) continue;
+
+                    if (nt == tl.length) {
+                        int cap = nt * 2 + 1;
+                        tl = Arrays.copyOf(tl, cap);
+                        ts = Arrays.copyOf(ts, cap);
+                        tt = Arrays.copyOf(tt, cap);
+                    }
+                    tl[nt] = x;
+                    ts[nt] = i;
+                    tt[nt] = j;
+                    nt++;
+                }
+            }
+        }
+        termLinks = Arrays.copyOf(tl, nt);
+        termLinkSource = Arrays.copyOf(ts, nt);
+        termLinkTarget = Arrays.copyOf(tt, nt);
+
+        int na = 0;
+        TaskLink[] al = new TaskLink[num];
+        int[] as = new int[num], ac = new int[num];
+        if (includeTaskLinks) {
+            for (int i = 0; i < num; i++) {
+                for (TaskLink x : concepts[i].taskLinks) {
+                    if ((x.targetTask == null) || (x.getPriority() <= minTaskPriority)) continue;
+
+                    if (na == al.length) {
+                        int cap = na * 2 + 1;
+                        al = Arrays.copyOf(al, cap);
+                        as = Arrays.copyOf(as, cap);
+                        ac = Arrays.copyOf(ac, cap);
+                    }
+                    Term term = x.targetTask.getTerm();
+                    Integer j = (term != null) ? index.get(term) : null;
+                    al[na] = x;
+                    as[na] = i;
+                    ac[na] = (j != null) ? j : -1;
+                    na++;
+                }
+            }
+        }
+        taskLinks = Arrays.copyOf(al, na);
+        taskLinkSource = Arrays.copyOf(as, na);
+        taskConcept = Arrays.copyOf(ac, na);
+    }
+
+    public int size() {
+        return concepts.length;
+    }
+
+    /**
+     * builds a new graph from this snapshot
+     * @param subtermIndex index reused between builds for term content; may be null if not included
+     */
+    public NARGraph build(SubtermIndex subtermIndex) {
+        NARGraph g = new NARGraph();
+
+        for (Concept c : concepts) {
+            g.addVertex(c);
+        }
+
+        for (int i = 0; i < termLinks.length; i++) {
+            g.addEdge(concepts[termLinkSource[i]], concepts[termLinkTarget[i]], new NARGraph.TermLinkEdge(termLinks[i]));
+        }
+
+        if (includeTermContent) {
+            Map<Term, Concept> terms = new HashMap(concepts.length * 2);
+            for (Concept c : concepts) {
+                terms.put(c.term, c);
+                g.addVertex(c.term);
+                g.addEdge(c, c.term, new NARGraph.TermContent());
+            }
+
+            if (subtermIndex == null)
+                subtermIndex = new SubtermIndex();
+            Set<Term> snapshotTerms = terms.keySet();
+            subtermIndex.build(snapshotTerms);
+            for (Term b : snapshotTerms) {
+                for (Term a : subtermIndex.getContainers(b)) {
+                    g.addEdge(a, b, new NARGraph.TermContent());
+                }
+            }
+        }
+
+        for (int i = 0; i < taskLinks.length; i++) {
+            TaskLink t = taskLinks[i];
+            Task theTask = t.targetTask;
+            if (!g.containsVertex(theTask)) {
+                g.addVertex(theTask);
+                int c = taskConcept[i];
+                if (c != -1) {
+                    g.addEdge(concepts[c], theTask, new NARGraph.TermContent());
+                }
+            }
+            g.addEdge(concepts[taskLinkSource[i]], theTask, new NARGraph.TaskLinkEdge(t));
+        }
+
+        return g;
+    }
+}
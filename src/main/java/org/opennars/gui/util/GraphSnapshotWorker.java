@@ -0,0 +1,111 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds graphs from snapshots on a dedicated background thread.
+ *
+ * Requests are coalesced: at most one build is in flight, and a snapshot
+ * which is still waiting when a newer one is submitted is dropped.
+ */
+public class GraphSnapshotWorker {
+
+    public interface GraphBuilt {
+        void onGraph(NARGraph g, GraphSnapshot s);
+    }
+
+    private final AtomicReference<GraphSnapshot> pending = new AtomicReference();
+    private final GraphBuilt listener;
+
+    /** only accessed by the worker thread(s); locked in case a stopped worker is still finishing */
+    private final SubtermIndex subtermIndex = new SubtermIndex();
+
+    private ExecutorService executor;
+    private volatile NARGraph latest;
+
+    /** incremented by stop(), so builds started before are discarded */
+    private volatile int generation;
+
+    /**
+     * held while a graph is published, so stop() waits for a listener which
+     * is running; apart from the lock of submit(), which the reasoner must
+     * never wait on while a listener writes to disk
+     */
+    private final Object publishing = new Object();
+
+    /** builds the pending snapshot, publishing it only if not stopped since the build was queued */
+    private Runnable buildPending(final int queuedGeneration) {
+        return new Runnable() {
+            @Override public void run() {
+                GraphSnapshot s = pending.getAndSet(null);
+                if (s == null) return;
+
+                NARGraph g;
+                synchronized (subtermIndex) {
+                    g = s.build(subtermIndex);
+                }
+                synchronized (publishing) {
+                    if (queuedGeneration != generation)
+                        return;
+                    latest = g;
+                    if (listener != null)
+                        listener.onGraph(g, s);
+                }
+            }
+        };
+    }
+
+    public GraphSnapshotWorker(GraphBuilt listener) {
+        this.listener = listener;
+    }
+
+    /** queues a snapshot to be built, replacing any snapshot not yet started */
+    public synchronized void submit(GraphSnapshot s) {
+        if (pending.getAndSet(s) == null) {
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "Graph Snapshot");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            executor.execute(buildPending(generation));
+        }
+    }
+
+    /** most recently built graph, or null if none has been built yet */
+    public NARGraph getLatest() {
+        return latest;
+    }
+
+    /** discards pending and running builds; a build already running is not published */
+    public void stop() {
+        synchronized (publishing) {
+            synchronized (this) {
+                generation++;
+                pending.set(null);
+                if (executor != null) {
+                    executor.shutdownNow();
+                    executor = null;
+                }
+                latest = null;
+            }
+        }
+    }
+}
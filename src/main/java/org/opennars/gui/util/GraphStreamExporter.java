@@ -0,0 +1,273 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.jgrapht.Graph;
+
+/**
+ * Writes a graph as GraphML or GML directly to a character stream, one
+ * vertex or edge at a time, instead of building the document in memory.
+ * Only the vertex numbering is kept (an int per vertex), and snapshots are
+ * written from their arrays without any.
+ *
+ * Files are written through a buffer and gzip-compressed when the name ends
+ * with ".gz".
+ */
+public class GraphStreamExporter {
+
+    public enum Format {
+        GraphML, GML
+    }
+
+    public interface Progress {
+        /**
+         * @param written vertices and edges written so far
+         * @param total vertices and edges to write
+         */
+        void onProgress(long written, long total);
+    }
+
+    /** number of elements written between progress reports */
+    public static final int progressInterval = 4096;
+
+    private static final int bufferSize = 64 * 1024;
+
+    private final Format format;
+    private Progress progress;
+
+    private Writer out;
+    private long written, total;
+
+    public GraphStreamExporter(Format format) {
+        this.format = format;
+    }
+
+    public GraphStreamExporter setProgress(Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /** @return a buffered UTF-8 writer to the file, gzip-compressed if its name ends with ".gz" */
+    public static Writer open(String file) throws IOException {
+        OutputStream os = new FileOutputStream(file, false);
+        try {
+            if (file.endsWith(".gz"))
+                os = new GZIPOutputStream(os, bufferSize);
+            return new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), bufferSize);
+        }
+        catch (IOException e) {
+            os.close();
+            throw e;
+        }
+    }
+
+    public void export(Graph g, String file) throws IOException {
+        try (Writer w = open(file)) {
+            export(g, w);
+        }
+    }
+
+    public void export(GraphSnapshot s, String file) throws IOException {
+        try (Writer w = open(file)) {
+            export(s, w);
+        }
+    }
+
+    /** writes the graph; the writer is flushed but not closed */
+    public void export(Graph g, Writer w) throws IOException {
+        begin(w, g.vertexSet().size() + g.edgeSet().size());
+
+        Map<Object, Integer> ids = new HashMap(g.vertexSet().size() * 2);
+        int n = 0;
+        for (Object v : g.vertexSet()) {
+            ids.put(v, ++n);
+            vertex(n, v);
+        }
+
+        int m = 0;
+        for (Object e : g.edgeSet()) {
+            Integer s = ids.get(g.getEdgeSource(e));
+            Integer t = ids.get(g.getEdgeTarget(e));
+            if ((s == null) || (t == null)) continue;
+            edge(++m, s, t, e);
+        }
+
+        end();
+    }
+
+    /**
+     * writes the concepts and links of a snapshot; vertex ids are the
+     * concept indices, followed by one vertex per tasklink target
+     */
+    public void export(GraphSnapshot s, Writer w) throws IOException {
+        int nc = s.concepts.length;
+        int nt = s.termLinks.length;
+        int na = s.taskLinks.length;
+        begin(w, nc + nt + 2L * na);
+
+        for (int i = 0; i < nc; i++) {
+            vertex(i + 1, s.concepts[i]);
+        }
+        for (int i = 0; i < na; i++) {
+            vertex(nc + i + 1, s.taskLinks[i].targetTask);
+        }
+
+        int m = 0;
+        for (int i = 0; i < nt; i++) {
+            edge(++m, s.termLinkSource[i] + 1, s.termLinkTarget[i] + 1, "termlink");
+        }
+        for (int i = 0; i < na; i++) {
+            edge(++m, s.taskLinkSource[i] + 1, nc + i + 1, "tasklink");
+        }
+
+        end();
+    }
+
+    private void begin(Writer w, long total) throws IOException {
+        this.out = w;
+        this.written = 0;
+        this.total = total;
+
+        switch (format) {
+            case GraphML:
+                w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                w.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+                w.write("<key id=\"vertex_label\" for=\"node\" attr.name=\"Vertex Label\" attr.type=\"string\"/>\n");
+                w.write("<key id=\"edge_label\" for=\"edge\" attr.name=\"Edge Label\" attr.type=\"string\"/>\n");
+                w.write("<graph edgedefault=\"directed\">\n");
+                break;
+            case GML:
+                w.write("Creator \"OpenNARS\"\nVersion 1\ngraph\n[\n\tlabel \"\"\n\tdirected 1\n");
+                break;
+        }
+        report();
+    }
+
+    private void vertex(int id, Object v) throws IOException {
+        Writer w = out;
+        switch (format) {
+            case GraphML:
+                w.write("<node id=\"");
+                w.write(Integer.toString(id));
+                w.write("\"><data key=\"vertex_label\">");
+                writeXML(String.valueOf(v));
+                w.write("</data></node>\n");
+                break;
+            case GML:
+                w.write("\tnode\n\t[\n\t\tid ");
+                w.write(Integer.toString(id));
+                w.write("\n\t\tlabel \"");
+                writeGML(String.valueOf(v));
+                w.write("\"\n\t]\n");
+                break;
+        }
+        next();
+    }
+
+    private void edge(int id, int source, int target, Object e) throws IOException {
+        Writer w = out;
+        switch (format) {
+            case GraphML:
+                w.write("<edge id=\"");
+                w.write(Integer.toString(id));
+                w.write("\" source=\"");
+                w.write(Integer.toString(source));
+                w.write("\" target=\"");
+                w.write(Integer.toString(target));
+                w.write("\"><data key=\"edge_label\">");
+                writeXML(String.valueOf(e));
+                w.write("</data></edge>\n");
+                break;
+            case GML:
+                w.write("\tedge\n\t[\n\t\tid ");
+                w.write(Integer.toString(id));
+                w.write("\n\t\tsource ");
+                w.write(Integer.toString(source));
+                w.write("\n\t\ttarget ");
+                w.write(Integer.toString(target));
+                w.write("\n\t\tlabel \"");
+                writeGML(String.valueOf(e));
+                w.write("\"\n\t]\n");
+                break;
+        }
+        next();
+    }
+
+    private void end() throws IOException {
+        switch (format) {
+            case GraphML:
+                out.write("</graph>\n</graphml>\n");
+                break;
+            case GML:
+                out.write("]\n");
+                break;
+        }
+        out.flush();
+        out = null;
+        report();
+    }
+
+    private void next() {
+        if ((++written % progressInterval) == 0)
+            report();
+    }
+
+    private void report() {
+        if (progress != null)
+            progress.onProgress(written, total);
+    }
+
+    private void writeXML(String s) throws IOException {
+        Writer w = out;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String r;
+            switch (s.charAt(i)) {
+                case '<': r = "&lt;"; break;
+                case '>': r = "&gt;"; break;
+                case '&': r = "&amp;"; break;
+                case '"': r = "&quot;"; break;
+                default: continue;
+            }
+            w.write(s, start, i - start);
+            w.write(r);
+            start = i + 1;
+        }
+        w.write(s, start, s.length() - start);
+    }
+
+    /** GML strings cannot contain quotes, which are written as the &amp;quot; entity */
+    private void writeGML(String s) throws IOException {
+        Writer w = out;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != '"') continue;
+            w.write(s, start, i - start);
+            w.write("&quot;");
+            start = i + 1;
+        }
+        w.write(s, start, s.length() - start);
+    }
+}
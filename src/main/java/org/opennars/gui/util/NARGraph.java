@@ -14,15 +14,12 @@
  */
 package org.opennars.gui.util;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
-import javax.xml.transform.TransformerConfigurationException;
 import org.opennars.main.Nar;
 import org.opennars.entity.BudgetValue;
 import org.opennars.entity.Concept;
@@ -30,15 +27,8 @@ import org.opennars.entity.TaskLink;
 import org.opennars.entity.TermLink;
 import org.opennars.language.Term;
 import org.jgrapht.Graph;
-import org.jgrapht.ext.GmlExporter;
-import org.jgrapht.ext.GraphMLExporter;
-import org.jgrapht.ext.IntegerEdgeNameProvider;
-import org.jgrapht.ext.IntegerNameProvider;
-import org.jgrapht.ext.StringEdgeNameProvider;
-import org.jgrapht.ext.StringNameProvider;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.DirectedMultigraph;
-import org.xml.sax.SAXException;
 
 /**
  * Stores the contents of some, all, or of multiple Nar memory snapshots.
@@ -118,6 +108,16 @@ public class NARGraph extends DirectedMultigraph {
          */
         void onConcept(NARGraph g, Concept c);
 
+        /**
+         * whether a concept is a candidate for onConcept; evaluated while the
+         * concept bag is locked, so it should be cheap
+         *
+         * @param c
+         */
+        default boolean includeConcept(Concept c) {
+            return true;
+        }
+
         /**
          * called at end of operation
          *
@@ -129,25 +129,33 @@ public class NARGraph extends DirectedMultigraph {
     abstract public static class NAREdge<X> extends DefaultEdge {
 
         private final X object;
+
+        /** 0 until computed; source and target are assigned only when the edge is added to a graph */
         private int hash;
 
         public NAREdge(X x) {
             this.object = x;
-            this.hash = getHash();
         }
 
         public NAREdge() {
             this.object = (X) getClass();
-            this.hash = getHash();
-        }
-
-        private int getHash() {
-            return Objects.hash(object.hashCode(), getSource(), getTarget());
         }
 
         @Override
         public int hashCode() {
-            return hash;
+            int h = hash;
+            if (h == 0) {
+                Object s = getSource(), t = getTarget();
+                h = object.hashCode();
+                if ((s == null) || (t == null)) {
+                    //not yet in a graph; don't cache
+                    return h;
+                }
+                h = 31 * (31 * h + s.hashCode()) + t.hashCode();
+                if (h == 0) h = 1;
+                hash = h;
+            }
+            return h;
         }
 
         public X getObject() {
@@ -314,6 +322,9 @@ public class NARGraph extends DirectedMultigraph {
         }
     }
 
+    /** counts NAREdges by (source, target, type) for addEdge's duplicate test */
+    private EdgeIndex edgeIndex = new EdgeIndex();
+
     public NARGraph() {
         super(DefaultEdge.class);
     }
@@ -328,7 +339,6 @@ public class NARGraph extends DirectedMultigraph {
         synchronized(n.memory.concepts) {
             for (Concept c : n.memory) {
 
-                //TODO use more efficient iterator so that the entire list does not need to be traversed when excluding ranges
                 float p = c.getPriority();
 
                 if (!filter.includePriority(p)) {
@@ -350,51 +360,151 @@ public class NARGraph extends DirectedMultigraph {
         }
     }
 
+    /**
+     * Adds only the maxConcepts highest priority concepts which pass the filter.
+     * The concept bag is locked only while the candidates are selected; the
+     * (more expensive) graphize callbacks run afterward, highest priority first.
+     */
+    public NARGraph add(Nar n, Filter filter, Graphize graphize, int maxConcepts) {
+        graphize.onTime(this, n.time());
+
+        for (Concept c : selectConcepts(n, filter, graphize, maxConcepts)) {
+            graphize.onConcept(this, c);
+        }
+
+        graphize.onFinish(this);
+        return this;
+    }
+
+    /**
+     * Selects the maxConcepts highest priority concepts which pass the filter
+     * and graphize.includeConcept, using a bounded heap while the concept bag is locked.
+     *
+     * @return the selected concepts, highest priority first
+     */
+    public static Concept[] selectConcepts(Nar n, Filter filter, Graphize graphize, int maxConcepts) {
+        if (maxConcepts <= 0) {
+            return new Concept[0];
+        }
+
+        TopK<Concept> top = new TopK(Math.min(maxConcepts, n.memory.concepts.size()));
+
+        synchronized(n.memory.concepts) {
+            for (Concept c : n.memory) {
+                float p = c.getPriority();
+
+                //cheap rejection of everything below the current k-th priority
+                if ((p <= top.min()) || !filter.includePriority(p)) {
+                    continue;
+                }
+
+                if (!filter.includeConcept(c) || !graphize.includeConcept(c)) {
+                    continue;
+                }
+
+                top.offer(c, p);
+            }
+        }
+
+        Concept[] selected = new Concept[top.size()];
+        top.drain(selected);
+        return selected;
+    }
+
     public boolean addEdge(Object sourceVertex, Object targetVertex, NAREdge e) {
         return addEdge(sourceVertex, targetVertex, e, false);
     }
 
     public boolean addEdge(Object sourceVertex, Object targetVertex, NAREdge e, boolean allowMultiple) {
-        if (!allowMultiple) {
-            Set existing = getAllEdges(sourceVertex, targetVertex);
-            if (existing != null) {
-                for (Object o : existing) {
-                    if (o.getClass() == e.getClass()) {
-                        return false;
+        Class type = e.getClass();
+        if (!EdgeIndex.indexable(type)) {
+            if (!allowMultiple) {
+                Set existing = getAllEdges(sourceVertex, targetVertex);
+                if (existing != null) {
+                    for (Object o : existing) {
+                        if (o.getClass() == type) {
+                            return false;
+                        }
                     }
                 }
             }
+            return super.addEdge(sourceVertex, targetVertex, e);
+        }
+
+        if (!allowMultiple && edgeIndex.contains(sourceVertex, targetVertex, type)) {
+            return false;
         }
 
-        return super.addEdge(sourceVertex, targetVertex, e);
+        if (super.addEdge(sourceVertex, targetVertex, e)) {
+            edgeIndex.add(sourceVertex, targetVertex, type);
+            return true;
+        }
+        return false;
     }
 
-    public void toGraphML(Writer writer) throws SAXException, TransformerConfigurationException {
-        GraphMLExporter gme = new GraphMLExporter(new IntegerNameProvider(), new StringNameProvider(), new IntegerEdgeNameProvider(), new StringEdgeNameProvider());
-        gme.export(writer, this);
+    @Override
+    public boolean removeEdge(Object e) {
+        if ((e instanceof NAREdge) && containsEdge(e)) {
+            NAREdge n = (NAREdge) e;
+            edgeIndex.remove(n.getSource(), n.getTarget(), e.getClass());
+        }
+        return super.removeEdge(e);
     }
 
-    public void toGraphML(String outputFile) throws SAXException, TransformerConfigurationException, IOException {
-        toGraphML(new FileWriter(outputFile, false));
+    @Override
+    public Object removeEdge(Object sourceVertex, Object targetVertex) {
+        Object e = super.removeEdge(sourceVertex, targetVertex);
+        if (e instanceof NAREdge) {
+            edgeIndex.remove(sourceVertex, targetVertex, e.getClass());
+        }
+        return e;
     }
 
-    public void toGML(Writer writer) {
-        GmlExporter gme = new GmlExporter(new IntegerNameProvider(), new StringNameProvider(), new IntegerEdgeNameProvider(), new StringEdgeNameProvider());
-        gme.setPrintLabels(GmlExporter.PRINT_EDGE_VERTEX_LABELS);
-        gme.export(writer, this);
+    @Override
+    public boolean removeVertex(Object v) {
+        if (!containsVertex(v)) {
+            return false;
+        }
+        for (Object e : new ArrayList(edgesOf(v))) {
+            removeEdge(e);
+        }
+        boolean removed = super.removeVertex(v);
+        edgeIndex.removeVertex(v);
+        return removed;
     }
 
+    public void toGraphML(Writer writer) throws IOException {
+        new GraphStreamExporter(GraphStreamExporter.Format.GraphML).export(this, writer);
+    }
+
+    /** writes GraphML to a file, gzip-compressed if its name ends with ".gz" */
+    public void toGraphML(String outputFile) throws IOException {
+        new GraphStreamExporter(GraphStreamExporter.Format.GraphML).export(this, outputFile);
+    }
+
+    public void toGML(Writer writer) throws IOException {
+        new GraphStreamExporter(GraphStreamExporter.Format.GML).export(this, writer);
+    }
+
+    /** writes GML to a file, gzip-compressed if its name ends with ".gz" */
     public void toGML(String outputFile) throws IOException {
-        toGML(new FileWriter(outputFile, false));
+        new GraphStreamExporter(GraphStreamExporter.Format.GML).export(this, outputFile);
     }
 
     @Override
     public Graph clone() {
-        return (Graph) super.clone();
+        NARGraph g = (NARGraph) super.clone();
+        g.edgeIndex = new EdgeIndex();
+        for (Object e : g.edgeSet()) {
+            if ((e instanceof NAREdge) && EdgeIndex.indexable(e.getClass())) {
+                g.edgeIndex.add(g.getEdgeSource(e), g.getEdgeTarget(e), e.getClass());
+            }
+        }
+        return g;
     }
 
     public void graphMLWrite(String filename) throws Exception {
-        new GraphMLExporter(new IntegerNameProvider(), new StringNameProvider(), new IntegerEdgeNameProvider(), new StringEdgeNameProvider()).export(new FileWriter(filename), this);
+        toGraphML(filename);
     }
 
     public static class TimeNode {
@@ -0,0 +1,98 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.opennars.language.CompoundTerm;
+import org.opennars.language.Term;
+
+/**
+ * Maps each term of a snapshot to the terms of the same snapshot which
+ * contain it, so that containment can be found in time linear in the total
+ * size of the terms instead of testing every pair with containsTerm.
+ *
+ * As with containsTerm, only the direct components of a term are indexed,
+ * not the components nested within them.  They are cached, since terms are
+ * immutable, and are reused by later snapshots as long as the term remains present.
+ */
+public class SubtermIndex {
+
+    private static final Term[] none = new Term[0];
+
+    /** distinct direct components of each term, excluding the term itself */
+    private final Map<Term, Term[]> subterms = new HashMap();
+
+    /** subterm -&gt; terms of the current snapshot containing it */
+    private final Map<Term, List<Term>> containers = new HashMap();
+
+    /** rebuilds the index for a snapshot of terms */
+    public SubtermIndex build(final Set<Term> snapshot) {
+        containers.clear();
+
+        //forget terms which have left the snapshot
+        subterms.keySet().retainAll(snapshot);
+
+        for (final Term a : snapshot) {
+            Term[] s = subterms.get(a);
+            if (s == null) {
+                s = subtermsOf(a);
+                subterms.put(a, s);
+            }
+
+            for (final Term b : s) {
+                if (!snapshot.contains(b)) continue;
+
+                List<Term> c = containers.get(b);
+                if (c == null) {
+                    c = new ArrayList(2);
+                    containers.put(b, c);
+                }
+                c.add(a);
+            }
+        }
+        return this;
+    }
+
+    /** terms of the current snapshot which contain t */
+    public List<Term> getContainers(final Term t) {
+        List<Term> c = containers.get(t);
+        if (c == null)
+            return Collections.emptyList();
+        return c;
+    }
+
+    public void clear() {
+        subterms.clear();
+        containers.clear();
+    }
+
+    protected static Term[] subtermsOf(final Term t) {
+        if (!(t instanceof CompoundTerm))
+            return none;
+
+        Set<Term> s = new LinkedHashSet();
+        Collections.addAll(s, ((CompoundTerm) t).term);
+        s.remove(t);
+        if (s.isEmpty())
+            return none;
+        return s.toArray(new Term[s.size()]);
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.opennars.language.CompoundTerm;
+import org.opennars.language.Statement;
+import org.opennars.language.Term;
+
+/**
+ * A term filter compiled from the text of a filter box.  The syntax is:
+ * <pre>
+ *   (empty)          every term
+ *   /regex/          terms whose text contains a match of the regex
+ *   op:SYMBOL        compound terms with that operator, ex: op:&amp;&amp;
+ *   &lt;S COPULA P&gt;   statements, ex: &lt;_ --&gt; bird&gt;, &lt;&lt;_ --&gt; _&gt; ==&gt; _&gt;
+ *   anything else    terms whose text contains it
+ * </pre>
+ * In a statement pattern, the subject, predicate and copula may each be _
+ * to match anything; the subject and predicate may also be a statement
+ * pattern, op: or /regex/, and otherwise must equal the component's text.
+ * A pattern which does not parse is used as plain text.
+ *
+ * Terms are matched against their cached TermLabels, and results are
+ * cached per term, since terms and filters are immutable.  Instances are
+ * safe to share between threads.
+ */
+public abstract class TermFilter {
+
+    private static final Set<String> copulas = new HashSet(Arrays.asList(
+            "-->", "<->", "{--", "--]", "{-]", "==>", "=/>", "=\\>", "=|>", "<=>", "</>", "<|>"));
+
+    public static final TermFilter All = new TermFilter("") {
+        @Override protected boolean match(Term t) {
+            return true;
+        }
+    };
+
+    public final String text;
+
+    private final LoadingCache<Term, Boolean> results = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Term, Boolean>() {
+                @Override public Boolean load(Term t) {
+                    return match(t);
+                }
+            });
+
+    protected TermFilter(String text) {
+        this.text = text;
+    }
+
+    public boolean accept(Term t) {
+        if (this == All) return true;
+        return results.getUnchecked(t);
+    }
+
+    /** evaluates the filter, uncached */
+    protected abstract boolean match(Term t);
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    public static TermFilter compile(String text) {
+        final String s = text.trim();
+        if (s.isEmpty())
+            return All;
+
+        TermFilter f = null;
+        if ((s.length() > 1) && s.startsWith("/") && s.endsWith("/")) {
+            f = regex(s, s.substring(1, s.length() - 1));
+        }
+        else if (s.startsWith("op:")) {
+            f = operator(s, s.substring(3).trim());
+        }
+        else if (s.startsWith("<") && s.endsWith(">")) {
+            f = statement(s);
+        }
+
+        return (f != null) ? f : contains(s);
+    }
+
+    /** terms whose text contains s */
+    public static TermFilter contains(final String s) {
+        return new TermFilter(s) {
+            @Override protected boolean match(Term t) {
+                return TermLabels.of(t).contains(s);
+            }
+        };
+    }
+
+    /** terms whose text equals s */
+    static TermFilter equal(final String s) {
+        return new TermFilter(s) {
+            @Override protected boolean match(Term t) {
+                return TermLabels.of(t).equals(s);
+            }
+        };
+    }
+
+    static TermFilter regex(String text, String regex) {
+        final Pattern p;
+        try {
+            p = Pattern.compile(regex);
+        }
+        catch (PatternSyntaxException e) {
+            return null;
+        }
+        return new TermFilter(text) {
+            @Override protected boolean match(Term t) {
+                return p.matcher(TermLabels.of(t)).find();
+            }
+        };
+    }
+
+    static TermFilter operator(String text, final String symbol) {
+        if (symbol.isEmpty())
+            return null;
+        return new TermFilter(text) {
+            @Override protected boolean match(Term t) {
+                return (t instanceof CompoundTerm) && symbol.equals(((CompoundTerm) t).operator().symbol);
+            }
+        };
+    }
+
+    /** compiles a subject or predicate of a statement pattern */
+    static TermFilter component(String s) {
+        if ("_".equals(s))
+            return All;
+        TermFilter f = null;
+        if ((s.length() > 1) && s.startsWith("/") && s.endsWith("/")) {
+            f = regex(s, s.substring(1, s.length() - 1));
+        }
+        else if (s.startsWith("op:")) {
+            f = operator(s, s.substring(3).trim());
+        }
+        else if (s.startsWith("<") && s.endsWith(">")) {
+            f = statement(s);
+        }
+        return (f != null) ? f : equal(s);
+    }
+
+    /** @return the filter, or null if s is not of the form &lt;S COPULA P&gt; */
+    static TermFilter statement(String s) {
+        String[] tokens = s.substring(1, s.length() - 1).trim().split("\\s+");
+
+        //group the tokens into subject, copula and predicate by the nesting of statements
+        List<String> parts = new ArrayList(3);
+        StringBuilder part = new StringBuilder();
+        int depth = 0;
+        for (String tok : tokens) {
+            if (tok.isEmpty()) continue;
+            if (part.length() > 0) part.append(' ');
+            part.append(tok);
+            if (!copulas.contains(tok)) {
+                for (int i = 0; i < tok.length(); i++) {
+                    char c = tok.charAt(i);
+                    if (c == '<') depth++;
+                    else if (c == '>') depth--;
+                }
+            }
+            if (depth < 0) return null;
+            if (depth == 0) {
+                parts.add(part.toString());
+                part.setLength(0);
+            }
+        }
+        if ((depth != 0) || (parts.size() != 3))
+            return null;
+
+        final String copula = parts.get(1);
+        if (!"_".equals(copula) && !copulas.contains(copula))
+            return null;
+        final TermFilter subject = component(parts.get(0));
+        final TermFilter predicate = component(parts.get(2));
+        final boolean anyCopula = "_".equals(copula);
+
+        return new TermFilter(s) {
+            @Override protected boolean match(Term t) {
+                if (!(t instanceof Statement))
+                    return false;
+                Statement st = (Statement) t;
+                return (anyCopula || copula.equals(st.operator().symbol))
+                        && subject.accept(st.getSubject())
+                        && predicate.accept(st.getPredicate());
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.opennars.language.Term;
+
+/**
+ * Interned text of terms, computed once per term and shared by all threads.
+ * Entries are held weakly, so they are dropped with terms which are no
+ * longer referenced.
+ */
+public final class TermLabels {
+
+    private static final LoadingCache<Term, String> labels = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Term, String>() {
+                @Override public String load(Term t) {
+                    return t.toString().intern();
+                }
+            });
+
+    private TermLabels() {
+    }
+
+    public static String of(Term t) {
+        return labels.getUnchecked(t);
+    }
+}
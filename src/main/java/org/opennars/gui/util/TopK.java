@@ -0,0 +1,125 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+/**
+ * Bounded selection of the k highest priority items, using a binary min-heap
+ * over primitive priorities so that offering an item costs O(log k) and no
+ * allocation.
+ */
+public class TopK<X> {
+
+    private final Object[] items;
+    private final float[] pri;
+    private int size;
+
+    public TopK(int k) {
+        if (k < 0) k = 0;
+        items = new Object[k];
+        pri = new float[k];
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == items.length;
+    }
+
+    /** lowest priority currently selected, or negative infinity if not full */
+    public float min() {
+        return isFull() && size > 0 ? pri[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    /** @return true if the item was selected (possibly displacing the lowest one) */
+    public boolean offer(final X x, final float p) {
+        int k = items.length;
+        if (size < k) {
+            int i = size++;
+            items[i] = x;
+            pri[i] = p;
+            siftUp(i);
+            return true;
+        }
+        if ((k == 0) || (p <= pri[0])) {
+            return false;
+        }
+        items[0] = x;
+        pri[0] = p;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * removes all selected items, highest priority first
+     * @param target array of at least size() elements
+     * @return number of items written
+     */
+    public int drain(final X[] target) {
+        int n = size;
+        for (int i = n - 1; i >= 0; i--) {
+            target[i] = (X) items[0];
+            int last = --size;
+            items[0] = items[last];
+            pri[0] = pri[last];
+            items[last] = null;
+            siftDown(0);
+        }
+        return n;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            items[i] = null;
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        final Object x = items[i];
+        final float p = pri[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (pri[parent] <= p) break;
+            items[i] = items[parent];
+            pri[i] = pri[parent];
+            i = parent;
+        }
+        items[i] = x;
+        pri[i] = p;
+    }
+
+    private void siftDown(int i) {
+        if (size == 0) return;
+        final Object x = items[i];
+        final float p = pri[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int c = (i << 1) + 1;
+            int r = c + 1;
+            if ((r < size) && (pri[r] < pri[c])) c = r;
+            if (p <= pri[c]) break;
+            items[i] = items[c];
+            pri[i] = pri[c];
+            i = c;
+        }
+        items[i] = x;
+        pri[i] = p;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.awt.Color;
+import org.opennars.inference.TruthFunctions;
+import org.opennars.main.Parameters;
+
+/**
+ * Colors of truth values, red for positive and blue for negative evidence,
+ * precomputed for frequency and confidence rounded to 1/resolution.  The
+ * positive and negative evidence are w2c(c2w(conf) * freq) and
+ * w2c(c2w(conf) * (1 - freq)).
+ *
+ * Tables are built once per Parameters instance, from its values at the
+ * time; they are held weakly by it.
+ */
+public final class TruthColors {
+
+    public static final int resolution = 64;
+    static final int side = resolution + 1;
+
+    private static final LoadingCache<Parameters, TruthColors> tables = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Parameters, TruthColors>() {
+                @Override public TruthColors load(Parameters p) {
+                    return new TruthColors(p);
+                }
+            });
+
+    public static TruthColors of(Parameters p) {
+        return tables.getUnchecked(p);
+    }
+
+    /** evidence in 0..1, by frequency bucket * side + confidence bucket */
+    private final float[] positive = new float[side * side];
+    private final float[] negative = new float[side * side];
+    /** opaque colors */
+    private final int[] rgb = new int[side * side];
+
+    private final float[] hsb = new float[3];
+
+    private TruthColors(Parameters p) {
+        for (int f = 0; f < side; f++) {
+            float freq = (float) f / resolution;
+            for (int c = 0; c < side; c++) {
+                float conf = (float) c / resolution;
+                float pos, neg;
+                if (c == resolution) {
+                    //infinite evidence: the limit, as w2c(c2w(1) * x) is NaN
+                    pos = (freq > 0) ? 1f : 0f;
+                    neg = (freq < 1) ? 1f : 0f;
+                }
+                else {
+                    float evidence = (float) TruthFunctions.c2w(conf, p);
+                    pos = (float) TruthFunctions.w2c(evidence * freq, p);
+                    neg = (float) TruthFunctions.w2c(evidence * (1.0f - freq), p);
+                }
+                int i = f * side + c;
+                positive[i] = pos;
+                negative[i] = neg;
+                //as drawn before by way of HSB, so colors stay the same
+                Color.RGBtoHSB((int) (pos * 255.0f), 0, (int) (neg * 255.0f), hsb);
+                rgb[i] = Color.HSBtoRGB(hsb[0], hsb[1], hsb[2]) & 0x00ffffff;
+            }
+        }
+    }
+
+    static int bucket(float x) {
+        int i = (int) (x * resolution + 0.5f);
+        return (i < 0) ? 0 : ((i > resolution) ? resolution : i);
+    }
+
+    static int index(float freq, float conf) {
+        return bucket(freq) * side + bucket(conf);
+    }
+
+    public float positive(float freq, float conf) {
+        return positive[index(freq, conf)];
+    }
+
+    public float negative(float freq, float conf) {
+        return negative[index(freq, conf)];
+    }
+
+    /** @param alpha opacity in 0..1 */
+    public int argb(float freq, float conf, float alpha) {
+        return rgb[index(freq, conf)] | (((int) (255f * alpha)) << 24);
+    }
+
+    /** opaque with confidence, from 0.25 to 1 as conf * factor goes from 0 to 1 */
+    public int argb(float freq, float conf) {
+        return argb(freq, conf, 0.25f + conf * 0.75f);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.dimensionalize;
+
+import automenta.vivisect.graph.CSRGraph;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedMultigraph;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class DenseHyperassociativeMapTest {
+
+    /** a tree of n vertices, each linked to a random earlier one */
+    static DirectedMultigraph<String, DefaultEdge> tree(int n) {
+        Random r = new Random(1);
+        DirectedMultigraph<String, DefaultEdge> g = new DirectedMultigraph(DefaultEdge.class);
+        g.addVertex("v0");
+        for (int i = 1; i < n; i++) {
+            g.addVertex("v" + i);
+            g.addEdge("v" + i, "v" + r.nextInt(i), new DefaultEdge());
+        }
+        return g;
+    }
+
+    static Map<String, double[]> positions(DenseHyperassociativeMap<String, DefaultEdge> d, Set<String> vertices) {
+        Map<String, double[]> m = new HashMap();
+        int k = d.getDimensions();
+        for (String v : vertices) {
+            int i = d.indexOf(v);
+            if (i == -1) continue;
+            double[] p = new double[k];
+            System.arraycopy(d.getCoordinates(), i * k, p, 0, k);
+            m.put(v, p);
+        }
+        return m;
+    }
+
+    @Test
+    public void testSameTopology() {
+        DirectedMultigraph<String, DefaultEdge> g = tree(50);
+        CSRGraph<String, DefaultEdge> t = new CSRGraph(g);
+        DenseHyperassociativeMap<String, DefaultEdge> d = new DenseHyperassociativeMap(2);
+        assertEquals(50, d.setTopology(t));
+        d.run(5);
+
+        double[] before = d.getCoordinates().clone();
+        assertEquals(0, d.setTopology(t.set(g)));
+        assertArrayEquals(before, d.getCoordinates(), 0);
+    }
+
+    @Test
+    public void testRemap() {
+        DirectedMultigraph<String, DefaultEdge> g = tree(200);
+        CSRGraph<String, DefaultEdge> t = new CSRGraph(g);
+        DenseHyperassociativeMap<String, DefaultEdge> d = new DenseHyperassociativeMap(2);
+        d.setTopology(t);
+        d.run(5);
+
+        for (int i = 0; i < 20; i++)
+            g.removeVertex("v" + (i * 7));
+        for (int i = 0; i < 10; i++) {
+            g.addVertex("n" + i);
+            g.addEdge("n" + i, "v1", new DefaultEdge());
+        }
+        Map<String, double[]> before = positions(d, g.vertexSet());
+
+        assertEquals(10, d.setTopology(t.set(g)));
+        assertEquals(190, d.size());
+
+        Map<String, double[]> after = positions(d, g.vertexSet());
+        Set<Integer> indices = new HashSet();
+        for (String v : g.vertexSet()) {
+            int i = d.indexOf(v);
+            assertEquals(t.id(v), i);
+            assertTrue(indices.add(i));
+            //vertices which were laid out keep their coordinates
+            if (before.containsKey(v))
+                assertArrayEquals(before.get(v), after.get(v), 0);
+        }
+        assertEquals(180, before.size());
+        for (int i = 0; i < 20; i++)
+            assertEquals(-1, d.indexOf("v" + (i * 7)));
+
+        d.run(5);
+        double[] c = d.getCoordinates();
+        for (int i = 0; i < d.size() * d.getDimensions(); i++)
+            assertFalse(Double.isNaN(c[i]));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedMultigraph;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CSRGraphTest {
+
+    /** a graph of edges written as "a>b" */
+    static DirectedMultigraph<String, DefaultEdge> graph(String... edges) {
+        DirectedMultigraph<String, DefaultEdge> g = new DirectedMultigraph(DefaultEdge.class);
+        for (String e : edges) {
+            String[] st = e.split(">");
+            g.addVertex(st[0]);
+            g.addVertex(st[1]);
+            g.addEdge(st[0], st[1], new DefaultEdge());
+        }
+        return g;
+    }
+
+    /** checks the topology describes the graph, with rows in ascending order */
+    static void assertConsistent(CSRGraph<String, DefaultEdge> t, Graph<String, DefaultEdge> g) {
+        assertEquals(g.vertexSet().size(), t.vertexCount());
+        assertEquals(g.edgeSet().size(), t.edgeCount());
+
+        for (String v : g.vertexSet())
+            assertSame(v, t.vertex(t.id(v)));
+
+        Set<DefaultEdge> seen = new HashSet();
+        for (int e = 0; e < t.edgeCount(); e++) {
+            DefaultEdge x = t.edge(e);
+            assertTrue(seen.add(x));
+            assertEquals(g.getEdgeSource(x), t.vertex(t.edgeSource[e]));
+            assertEquals(g.getEdgeTarget(x), t.vertex(t.edgeTarget[e]));
+        }
+
+        for (int i = 0; i < t.vertexCount(); i++) {
+            assertEquals(g.edgesOf(t.vertex(i)).size(), t.degree(i));
+            for (int p = t.offsets[i]; p < t.offsets[i + 1]; p++) {
+                if (p > t.offsets[i])
+                    assertTrue(t.targets[p - 1] <= t.targets[p]);
+                int e = t.adjacentEdge[p];
+                int other = (t.edgeSource[e] == i) ? t.edgeTarget[e] : t.edgeSource[e];
+                assertEquals(other, t.targets[p]);
+            }
+        }
+    }
+
+    @Test
+    public void testSet() {
+        DirectedMultigraph<String, DefaultEdge> g = graph("a>b", "b>c", "c>a", "a>d");
+        CSRGraph<String, DefaultEdge> t = new CSRGraph(g);
+        assertConsistent(t, g);
+        assertEquals(3, t.degree(t.id("a")));
+        assertEquals(-1, t.id("x"));
+    }
+
+    @Test
+    public void testAddRemove() {
+        DirectedMultigraph<String, DefaultEdge> g = graph("a>b", "b>c", "c>d", "d>a");
+        CSRGraph<String, DefaultEdge> t = new CSRGraph(g);
+        int b = t.id("b"), c = t.id("c");
+
+        g.removeVertex("a");
+        g.addVertex("e");
+        g.addEdge("e", "b", new DefaultEdge());
+        t.set(g);
+        assertConsistent(t, g);
+        //remaining vertices keep their ids
+        assertEquals(b, t.id("b"));
+        assertEquals(c, t.id("c"));
+
+        g.removeEdge(g.getEdge("b", "c"));
+        t.set(g);
+        assertConsistent(t, g);
+        assertEquals(1, t.degree(t.id("b")));
+    }
+
+    @Test
+    public void testVersion() {
+        DirectedMultigraph<String, DefaultEdge> g = graph("a>b", "b>c");
+        CSRGraph<String, DefaultEdge> t = new CSRGraph(g);
+        int v = t.getVersion();
+
+        t.set(g);
+        assertEquals(v, t.getVersion());
+
+        //the same vertices and edges in another order
+        DirectedMultigraph<String, DefaultEdge> h = new DirectedMultigraph(DefaultEdge.class);
+        h.addVertex("c");
+        h.addVertex("b");
+        h.addVertex("a");
+        h.addEdge("b", "c", new DefaultEdge());
+        h.addEdge("a", "b", new DefaultEdge());
+        t.set(h);
+        assertConsistent(t, h);
+        assertEquals(v, t.getVersion());
+
+        h.addEdge("a", "c", new DefaultEdge());
+        t.set(h);
+        assertNotEquals(v, t.getVersion());
+    }
+
+    @Test
+    public void testSelfLoop() {
+        DirectedMultigraph<String, DefaultEdge> g = graph("a>a", "a>b");
+        CSRGraph<String, DefaultEdge> t = new CSRGraph(g);
+        assertConsistent(t, g);
+        assertEquals(2, t.degree(t.id("a")));
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package automenta.vivisect.graph;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SpatialGridTest {
+
+    static final int n = 2000;
+
+    final float[] x = new float[n], y = new float[n];
+    final SpatialGrid grid = new SpatialGrid();
+
+    public SpatialGridTest() {
+        Random r = new Random(1);
+        for (int i = 0; i < n; i++) {
+            x[i] = r.nextFloat() * 1000 - 500;
+            y[i] = r.nextFloat() * 300;
+        }
+        grid.build(x, y, n);
+    }
+
+    @Test
+    public void testQuery() {
+        Random r = new Random(2);
+        for (int q = 0; q < 50; q++) {
+            float x0 = r.nextFloat() * 1200 - 600, y0 = r.nextFloat() * 400 - 50;
+            float x1 = x0 + r.nextFloat() * 300, y1 = y0 + r.nextFloat() * 100;
+
+            int count = grid.query(x0, y0, x1, y1);
+            int[] found = grid.getFound();
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if ((x[i] >= x0) && (x[i] <= x1) && (y[i] >= y0) && (y[i] <= y1)) {
+                    assertTrue(k < count);
+                    //in ascending order
+                    assertEquals(i, found[k++]);
+                }
+            }
+            assertEquals(k, count);
+        }
+    }
+
+    @Test
+    public void testNearest() {
+        Random r = new Random(3);
+        for (int q = 0; q < 50; q++) {
+            float px = r.nextFloat() * 1000 - 500, py = r.nextFloat() * 300;
+            float maxDist = r.nextFloat() * 20;
+
+            int best = -1;
+            float bestD = maxDist * maxDist;
+            for (int i = 0; i < n; i++) {
+                float dx = x[i] - px, dy = y[i] - py;
+                float d = dx * dx + dy * dy;
+                if (d <= bestD) {
+                    bestD = d;
+                    best = i;
+                }
+            }
+
+            int i = grid.nearest(px, py, maxDist);
+            if (best == -1) {
+                assertEquals(-1, i);
+            }
+            else {
+                float dx = x[i] - px, dy = y[i] - py;
+                assertEquals(bestD, dx * dx + dy * dy, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        SpatialGrid g = new SpatialGrid().build(new float[0], new float[0], 0);
+        assertEquals(0, g.query(-1, -1, 1, 1));
+        assertEquals(-1, g.nearest(0, 0, 10));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import org.opennars.gui.util.NARGraph.TermContent;
+import org.opennars.gui.util.NARGraph.TermType;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class EdgeIndexTest {
+
+    @Test
+    public void testCounts() {
+        EdgeIndex x = new EdgeIndex();
+        x.add("a", "b", TermContent.class);
+        x.add("a", "b", TermContent.class);
+        x.add("a", "b", TermType.class);
+        assertEquals(2, x.size());
+        assertTrue(x.contains("a", "b", TermContent.class));
+        assertFalse(x.contains("b", "a", TermContent.class));
+
+        x.remove("a", "b", TermContent.class);
+        assertTrue(x.contains("a", "b", TermContent.class));
+        x.remove("a", "b", TermContent.class);
+        assertFalse(x.contains("a", "b", TermContent.class));
+        assertTrue(x.contains("a", "b", TermType.class));
+        assertEquals(1, x.size());
+    }
+
+    @Test
+    public void testGrow() {
+        EdgeIndex x = new EdgeIndex();
+        for (int i = 0; i < 1000; i++)
+            x.add("v" + i, "v" + (i + 1), TermContent.class);
+        assertEquals(1000, x.size());
+        for (int i = 0; i < 1000; i += 2)
+            x.remove("v" + i, "v" + (i + 1), TermContent.class);
+        assertEquals(500, x.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals((i % 2) == 1, x.contains("v" + i, "v" + (i + 1), TermContent.class));
+    }
+
+    @Test
+    public void testReusedVertexId() {
+        EdgeIndex x = new EdgeIndex();
+        x.add("a", "b", TermContent.class);
+        x.remove("a", "b", TermContent.class);
+        x.removeVertex("a");
+
+        //takes the id released by a
+        x.add("c", "b", TermContent.class);
+        assertFalse(x.contains("a", "b", TermContent.class));
+        assertTrue(x.contains("c", "b", TermContent.class));
+    }
+
+    @Test
+    public void testGraph() {
+        NARGraph g = new NARGraph();
+        g.addVertex("a");
+        g.addVertex("b");
+        g.addVertex("c");
+
+        assertTrue(g.addEdge("a", "b", new TermContent()));
+        assertFalse(g.addEdge("a", "b", new TermContent()));
+        assertTrue(g.addEdge("a", "b", new TermType()));
+        assertEquals(2, g.edgeSet().size());
+
+        //the duplicate test follows removals
+        for (Object e : g.getAllEdges("a", "b").toArray()) {
+            if (e instanceof TermContent)
+                g.removeEdge(e);
+        }
+        assertTrue(g.addEdge("a", "b", new TermContent()));
+
+        g.removeVertex("a");
+        g.addVertex("a");
+        assertTrue(g.addEdge("a", "b", new TermContent()));
+        assertTrue(g.addEdge("c", "b", new TermContent()));
+        assertFalse(g.addEdge("c", "b", new TermContent()));
+
+        //a clone indexes its own edges
+        NARGraph h = (NARGraph) g.clone();
+        assertFalse(h.addEdge("a", "b", new TermContent()));
+        h.removeVertex("a");
+        h.addVertex("a");
+        assertTrue(h.addEdge("a", "b", new TermContent()));
+        assertFalse(g.addEdge("a", "b", new TermContent()));
+    }
+}
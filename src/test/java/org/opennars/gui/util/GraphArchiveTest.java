@@ -0,0 +1,155 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphArchiveTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("graph", ".archive");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    static NARGraph graph() {
+        NARGraph g = new NARGraph();
+        g.addVertex("a");
+        g.addVertex("b");
+        g.addVertex("c");
+        g.addEdge("a", "b", new NARGraph.TermContent());
+        g.addEdge("b", "c", new NARGraph.TermType());
+        return g;
+    }
+
+    static Map<String, GraphArchive.Vertex> vertices(NARGraph g) {
+        Map<String, GraphArchive.Vertex> m = new HashMap();
+        for (Object v : g.vertexSet())
+            m.put(v.toString(), (GraphArchive.Vertex) v);
+        return m;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        NARGraph g = graph();
+        try (GraphArchiveWriter w = new GraphArchiveWriter(file.getPath())) {
+            w.append(g, 10);
+            g.addVertex("d");
+            g.addEdge("d", "a", new NARGraph.TermContent());
+            w.append(g, 20);
+        }
+
+        try (GraphArchiveReader r = new GraphArchiveReader(file.getPath())) {
+            assertEquals(2, r.size());
+            assertEquals(10, r.time(0));
+            assertEquals(20, r.time(1));
+            //labels are stored once
+            assertEquals(4, r.stringCount());
+
+            NARGraph f = r.load(0);
+            assertEquals(3, f.vertexSet().size());
+            assertEquals(2, f.edgeSet().size());
+            Map<String, GraphArchive.Vertex> v = vertices(f);
+            assertEquals(GraphArchive.OTHER, v.get("a").kind);
+            assertFalse(v.get("a").hasTruth());
+            for (Object e : f.edgeSet()) {
+                GraphArchive.Edge x = (GraphArchive.Edge) e;
+                String s = f.getEdgeSource(e).toString(), t = f.getEdgeTarget(e).toString();
+                if (s.equals("a")) {
+                    assertEquals("b", t);
+                    assertEquals("has", x.toString());
+                }
+                else {
+                    assertEquals("b", s);
+                    assertEquals("c", t);
+                    assertEquals("type", x.toString());
+                }
+            }
+
+            NARGraph h = r.load(1);
+            assertEquals(4, h.vertexSet().size());
+            assertEquals(3, h.edgeSet().size());
+            assertTrue(h.containsVertex(vertices(h).get("d")));
+        }
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        NARGraph g = graph();
+        try (GraphArchiveWriter w = new GraphArchiveWriter(file.getPath())) {
+            for (long t : new long[] { 10, 20, 30, 0, 10 })
+                w.append(g, t);
+        }
+
+        try (GraphArchiveReader r = new GraphArchiveReader(file.getPath())) {
+            assertEquals(5, r.size());
+            //the time went back once, as after a reset
+            assertEquals(2, r.segmentCount());
+            assertEquals(3, r.segmentStart(1));
+            assertEquals(1, r.segmentOf(4));
+            assertEquals(4, r.frameAt(25));
+            assertEquals(1, r.frameAt(0, 25));
+            assertEquals(-1, r.frameAt(0, 5));
+        }
+    }
+
+    @Test
+    public void testFollow() throws IOException {
+        NARGraph g = graph();
+        try (GraphArchiveWriter w = new GraphArchiveWriter(file.getPath())) {
+            w.append(g, 1);
+            w.flush();
+
+            try (GraphArchiveReader r = new GraphArchiveReader(file.getPath())) {
+                assertEquals(1, r.size());
+                assertEquals(1, r.refresh());
+
+                g.addVertex("d");
+                w.append(g, 2);
+                w.flush();
+                assertEquals(2, r.refresh());
+                assertEquals(4, r.stringCount());
+                assertEquals(4, r.load(1).vertexSet().size());
+            }
+        }
+
+        //appending continues after the existing frames
+        try (GraphArchiveWriter w = new GraphArchiveWriter(file.getPath())) {
+            assertEquals(2, w.size());
+            w.append(g, 3);
+        }
+        try (GraphArchiveReader r = new GraphArchiveReader(file.getPath())) {
+            assertEquals(3, r.size());
+            assertEquals(4, r.stringCount());
+            assertEquals(1, r.segmentCount());
+        }
+    }
+}
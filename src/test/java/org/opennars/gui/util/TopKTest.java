@@ -0,0 +1,73 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.opennars.gui.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TopKTest {
+
+    @Test
+    public void testSelectsHighest() {
+        Random r = new Random(1);
+        Float[] all = new Float[1000];
+        TopK<Float> top = new TopK(10);
+        for (int i = 0; i < all.length; i++) {
+            all[i] = r.nextFloat();
+            top.offer(all[i], all[i]);
+        }
+        assertEquals(10, top.size());
+
+        Arrays.sort(all);
+        Float[] expected = new Float[10];
+        for (int i = 0; i < 10; i++)
+            expected[i] = all[all.length - 1 - i];
+        assertEquals(expected[9], top.min(), 0);
+
+        Float[] selected = new Float[10];
+        assertEquals(10, top.drain(selected));
+        assertArrayEquals(expected, selected);
+        assertEquals(0, top.size());
+    }
+
+    @Test
+    public void testNotFull() {
+        TopK<String> top = new TopK(3);
+        assertTrue(top.offer("a", 0.5f));
+        assertEquals(Float.NEGATIVE_INFINITY, top.min(), 0);
+        assertTrue(top.offer("b", 0.7f));
+
+        String[] selected = new String[2];
+        assertEquals(2, top.drain(selected));
+        assertArrayEquals(new String[] { "b", "a" }, selected);
+    }
+
+    @Test
+    public void testRejectsLowest() {
+        TopK<String> top = new TopK(2);
+        top.offer("a", 0.5f);
+        top.offer("b", 0.7f);
+        assertFalse(top.offer("c", 0.5f));
+        assertTrue(top.offer("d", 0.6f));
+        assertEquals(0.6f, top.min(), 0);
+
+        assertFalse(new TopK(0).offer("a", 1f));
+    }
+}